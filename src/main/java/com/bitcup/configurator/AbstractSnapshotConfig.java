@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.Configuration;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves the getters of {@link com.bitcup.configurator.FileConfig} and
+ * {@link com.bitcup.configurator.FileConfigBundle} from an immutable
+ * {@link com.bitcup.configurator.ConfigVersion}.  At most once per refresh delay, a
+ * read lets one thread check the sources for changes while the others keep reading
+ * the version served; subclasses publish new versions via {@link #serve(ConfigVersion)}.
+ * <p/>
+ * User: omar
+ */
+abstract class AbstractSnapshotConfig {
+
+    protected final int refreshDelaySecs;
+
+    // guards checking the sources and publishing versions
+    protected final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile long nextRefreshCheck;
+    private volatile ConfigVersion served;
+
+    AbstractSnapshotConfig(int refreshDelaySecs) {
+        this.refreshDelaySecs = refreshDelaySecs;
+    }
+
+    /**
+     * Checks the sources and publishes a new version if they changed.  Called with
+     * the refresh lock held.
+     *
+     * @param force publish even if the sources did not change
+     */
+    protected abstract void check(boolean force);
+
+    /**
+     * Called each time a getter reads the key from the given version.
+     */
+    protected void onRead(ConfigVersion version, String key) {
+    }
+
+    /**
+     * @return the value the String getters return for the value read
+     */
+    protected String resolve(String key, String value) {
+        return value;
+    }
+
+    /**
+     * @return the version served by the getters, checking the sources for changes
+     * first if the refresh delay has elapsed
+     */
+    protected ConfigVersion snapshot() {
+        if (currentTimeMillis() >= nextRefreshCheck) {
+            refresh(false);
+        }
+        return served;
+    }
+
+    /**
+     * Checks the sources once, see {@link #check(boolean)}.
+     *
+     * @param force wait for a concurrent refresh and publish even if the sources did not change
+     */
+    protected void refresh(boolean force) {
+        if (force) {
+            refreshLock.lock();
+        } else if (!refreshLock.tryLock()) {
+            // another thread is refreshing, keep serving the current version meanwhile
+            return;
+        }
+        try {
+            scheduleRefreshCheck();
+            check(force);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Postpones the next check by a refresh delay.  Must hold the refresh lock.
+     */
+    protected void scheduleRefreshCheck() {
+        nextRefreshCheck = currentTimeMillis() + TimeUnit.SECONDS.toMillis(refreshDelaySecs);
+    }
+
+    /**
+     * @return the time the refresh delay is measured with; tests override it to
+     * check the delay without waiting for it
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private Configuration read(String key) {
+        final ConfigVersion version = snapshot();
+        onRead(version, key);
+        return version.getConfiguration();
+    }
+
+    /**
+     * Serves the given version to the getters.  Must hold the refresh lock, so that
+     * versions are swapped one at a time.
+     */
+    protected void serve(ConfigVersion version) {
+        served = version;
+    }
+
+    /**
+     * @return read-only snapshot of the properties currently served by the getters
+     */
+    public Configuration getConfiguration() {
+        return snapshot().getConfiguration();
+    }
+
+    /**
+     * @return version currently served by the getters
+     */
+    public ConfigVersion getCurrentVersion() {
+        return served;
+    }
+
+    public String getString(String key) {
+        return resolve(key, read(key).getString(key));
+    }
+
+    public String getString(String key, String defaultValue) {
+        return resolve(key, read(key).getString(key, defaultValue));
+    }
+
+    public Boolean getBoolean(String key) {
+        return read(key).getBoolean(key);
+    }
+
+    public Boolean getBoolean(String key, Boolean defaultValue) {
+        return read(key).getBoolean(key, defaultValue);
+    }
+
+    public Integer getInt(String key) {
+        return read(key).getInt(key);
+    }
+
+    public Integer getInt(String key, Integer defaultValue) {
+        return read(key).getInt(key, defaultValue);
+    }
+
+    public Long getLong(String key) {
+        return read(key).getLong(key);
+    }
+
+    public Long getLong(String key, Long defaultValue) {
+        return read(key).getLong(key, defaultValue);
+    }
+
+    public List<Object> getList(String key) {
+        return read(key).getList(key);
+    }
+
+    public List<Object> getList(String key, List<Object> defaultValue) {
+        return read(key).getList(key, defaultValue);
+    }
+}
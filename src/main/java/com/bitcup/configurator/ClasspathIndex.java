@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.ConfigurationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Singleton index of classpath resource locations shared by all
+ * {@link com.bitcup.configurator.FileConfig} instances.  Each resource name is
+ * looked up once with {@link org.apache.commons.configuration.ConfigurationUtils#locate(String)},
+ * as <code>new PropertiesConfiguration(name)</code> would: as a URL, an absolute path,
+ * relative to the working directory and the user home, then on the classpath.  The
+ * outcome is remembered.
+ * <p/>
+ * The classpath searched is that of the thread's context class loader, so the index
+ * is kept per context class loader: applications sharing this library in a container,
+ * each with its own class loader, never see each other's resources.  Class loaders
+ * are held weakly and their entries dropped once they are collected.
+ * <p/>
+ * Missing resources, such as host or env layers most processes do not have, are
+ * kept in the index as known-missing: resolving them again costs a map lookup and
+ * never throws.  {@link #revalidate(String, long)} re-probes a known-missing resource
+ * once its entry is older than a given age, but never more often than every
+ * {@value #MIN_REPROBE_INTERVAL_MILLIS} ms, so layers added later are still found.
+ * <p/>
+ * User: omar
+ */
+public class ClasspathIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClasspathIndex.class);
+
+    /**
+     * Minimum age of a known-missing entry before it is re-probed, whatever the
+     * age asked for, so that frequent callers do not search the classpath on
+     * every call.
+     */
+    public static final long MIN_REPROBE_INTERVAL_MILLIS = 1000;
+
+    private static ClasspathIndex instance = new ClasspathIndex();
+
+    // locations by resource name, per context class loader
+    private final Map<ClassLoader, ConcurrentMap<String, Location>> locationsByLoader =
+            new WeakHashMap<ClassLoader, ConcurrentMap<String, Location>>();
+
+    public static ClasspathIndex getInstance() {
+        return instance;
+    }
+
+    private ClasspathIndex() {
+    }
+
+    /**
+     * @param name resource name
+     * @return location of the resource, or null if it cannot be found
+     */
+    public URL locate(String name) {
+        final ConcurrentMap<String, Location> locations = locations();
+        Location location = locations.get(name);
+        if (location == null) {
+            location = probe(locations, name);
+        }
+        return location.url;
+    }
+
+    /**
+     * Resolves a resource, probing again if it was known to be missing when last
+     * checked more than maxAgeMillis, and at least {@value #MIN_REPROBE_INTERVAL_MILLIS} ms, ago.
+     *
+     * @param name         resource name
+     * @param maxAgeMillis age after which a known-missing entry is re-probed
+     * @return location of the resource, or null if it still cannot be found
+     */
+    public URL revalidate(String name, long maxAgeMillis) {
+        final ConcurrentMap<String, Location> locations = locations();
+        Location location = locations.get(name);
+        if (location == null || (location.url == null && System.currentTimeMillis() - location.checkedAt
+                >= Math.max(maxAgeMillis, MIN_REPROBE_INTERVAL_MILLIS))) {
+            location = probe(locations, name);
+        }
+        return location.url;
+    }
+
+    /**
+     * @param name resource name
+     * @return true if the resource was missing when last probed
+     */
+    public boolean isKnownMissing(String name) {
+        final Location location = locations().get(name);
+        return location != null && location.url == null;
+    }
+
+    /**
+     * @return number of resources indexed for the current context class loader,
+     * present or missing
+     */
+    public int size() {
+        return locations().size();
+    }
+
+    /**
+     * Forgets all locations, for all class loaders.
+     */
+    public void clear() {
+        synchronized (locationsByLoader) {
+            locationsByLoader.clear();
+        }
+    }
+
+    /**
+     * @return the locations indexed for the current context class loader, which
+     * {@link org.apache.commons.configuration.ConfigurationUtils} searches first,
+     * or for the system class loader it falls back to
+     */
+    private ConcurrentMap<String, Location> locations() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ClassLoader.getSystemClassLoader();
+        }
+        synchronized (locationsByLoader) {
+            ConcurrentMap<String, Location> locations = locationsByLoader.get(loader);
+            if (locations == null) {
+                locations = new ConcurrentHashMap<String, Location>();
+                locationsByLoader.put(loader, locations);
+            }
+            return locations;
+        }
+    }
+
+    private Location probe(ConcurrentMap<String, Location> locations, String name) {
+        // returns null rather than throwing when the resource cannot be found
+        final URL url = ConfigurationUtils.locate(name);
+        if (logger.isTraceEnabled()) {
+            logger.trace("Indexed resource " + name + " at " + url);
+        }
+        final Location location = new Location(url, System.currentTimeMillis());
+        locations.put(name, location);
+        return location;
+    }
+
+    private static class Location {
+        final URL url;
+        final long checkedAt;
+
+        Location(URL url, long checkedAt) {
+            this.url = url;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Differences between two {@link com.bitcup.configurator.ConfigVersion}s of a
+ * {@link com.bitcup.configurator.FileConfig}, sorted by key.
+ * <p/>
+ * User: omar
+ */
+public class ConfigDiff implements PersistentMap.DiffVisitor<String, Object> {
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final Map<String, Object> added = new TreeMap<String, Object>();
+    private final Map<String, Object> removed = new TreeMap<String, Object>();
+    private final Map<String, Change> changed = new TreeMap<String, Change>();
+
+    ConfigDiff(ConfigVersion from, ConfigVersion to) {
+        this.fromVersion = from.getVersion();
+        this.toVersion = to.getVersion();
+        from.diff(to, this);
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * @return properties present only in the newer version
+     */
+    public Map<String, Object> getAdded() {
+        return Collections.unmodifiableMap(added);
+    }
+
+    /**
+     * @return properties present only in the older version
+     */
+    public Map<String, Object> getRemoved() {
+        return Collections.unmodifiableMap(removed);
+    }
+
+    /**
+     * @return properties whose value differs between the versions
+     */
+    public Map<String, Change> getChanged() {
+        return Collections.unmodifiableMap(changed);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public void added(String key, Object value) {
+        added.put(key, value);
+    }
+
+    @Override
+    public void removed(String key, Object value) {
+        removed.put(key, value);
+    }
+
+    @Override
+    public void changed(String key, Object oldValue, Object newValue) {
+        changed.put(key, new Change(oldValue, newValue));
+    }
+
+    @Override
+    public String toString() {
+        return "diff " + fromVersion + " -> " + toVersion + ": added=" + added + ", removed=" + removed
+                + ", changed=" + changed;
+    }
+
+    /**
+     * Old and new value of a changed property.
+     */
+    public static class Change {
+        private final Object oldValue;
+        private final Object newValue;
+
+        Change(Object oldValue, Object newValue) {
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public Object getOldValue() {
+            return oldValue;
+        }
+
+        public Object getNewValue() {
+            return newValue;
+        }
+
+        @Override
+        public String toString() {
+            return oldValue + " -> " + newValue;
+        }
+    }
+}
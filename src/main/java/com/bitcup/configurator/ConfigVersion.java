@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.Configuration;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * One merged snapshot of the layers of a {@link com.bitcup.configurator.FileConfig},
+ * recorded each time a reload changes its properties.
+ * <p/>
+ * The fingerprint of each layer consists of its URL, the modification time of
+ * the file and a hash of its properties, identifying exactly which sources
+ * produced the version.
+ * <p/>
+ * In heap storage mode, the version also records the layer each property was
+ * merged from, so that reads can be attributed to the layer that served them.
+ * <p/>
+ * User: omar
+ */
+public class ConfigVersion {
+
+    private final long version;
+    private final long timestamp;
+    private final Map<Layer, String> fingerprints;
+    private final Map<String, Object> properties;
+    // layer defining each property, absent for properties set programmatically
+    private final Map<String, Layer> origins;
+    private final Configuration configuration;
+    private final long heapModeBytes;
+
+    /**
+     * @param properties    merged properties, a {@link com.bitcup.configurator.PersistentMap} or an
+     *                      {@link com.bitcup.configurator.OffHeapStore}
+     * @param origins       layer defining each property, without the properties set
+     *                      programmatically, or null if not recorded
+     * @param heapModeBytes estimated heap bytes of the properties and layers in heap mode
+     */
+    ConfigVersion(long version, long timestamp, Map<Layer, String> fingerprints,
+                  Map<String, Object> properties, Map<String, Layer> origins, long heapModeBytes) {
+        this.version = version;
+        this.timestamp = timestamp;
+        this.fingerprints = Collections.unmodifiableMap(fingerprints);
+        this.properties = properties;
+        this.origins = origins;
+        this.configuration = new SnapshotConfiguration(properties);
+        this.heapModeBytes = heapModeBytes;
+    }
+
+    /**
+     * @return version number, increasing with each reload
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return time the version was loaded, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return fingerprint of each layer the version was merged from
+     */
+    public Map<Layer, String> getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * @return merged properties of the version
+     */
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return read-only configuration over the merged properties
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @param key property key
+     * @return the layer that defines the property in this version, or null if the
+     * property is missing, set programmatically, or origins were not recorded, as in
+     * off-heap storage modes
+     */
+    public Layer getWinningLayer(String key) {
+        return origins == null ? null : origins.get(key);
+    }
+
+    /**
+     * @return true if the property was set programmatically, overriding all layers
+     */
+    boolean isOverridden(String key) {
+        return origins != null && !origins.containsKey(key) && properties.containsKey(key);
+    }
+
+    Map<String, Layer> getOrigins() {
+        return origins;
+    }
+
+    long getHeapModeBytes() {
+        return heapModeBytes;
+    }
+
+    /**
+     * Reports the differences between this version and a newer one, skipping
+     * shared subtrees when both are stored on the heap.
+     */
+    @SuppressWarnings("unchecked")
+    void diff(ConfigVersion newer, PersistentMap.DiffVisitor<String, Object> visitor) {
+        if (properties instanceof PersistentMap && newer.properties instanceof PersistentMap) {
+            ((PersistentMap<String, Object>) properties).diff((PersistentMap<String, Object>) newer.properties, visitor);
+            return;
+        }
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            final Object value = newer.properties.get(e.getKey());
+            if (value == null) {
+                visitor.removed(e.getKey(), e.getValue());
+            } else if (!value.equals(e.getValue())) {
+                visitor.changed(e.getKey(), e.getValue(), value);
+            }
+        }
+        for (Map.Entry<String, Object> e : newer.properties.entrySet()) {
+            if (!properties.containsKey(e.getKey())) {
+                visitor.added(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "version " + version + " loaded at " + new Date(timestamp) + " from " + fingerprints;
+    }
+}
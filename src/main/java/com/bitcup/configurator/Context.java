@@ -27,8 +27,8 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 /**
- * Singleton used to store metadata about the java process,
- * passed as JVM parameters, consisting of the following:
+ * Stores metadata about the java process, passed as JVM parameters,
+ * consisting of the following:
  * <p/>
  * env
  * hostName
@@ -43,6 +43,11 @@ import java.net.UnknownHostException;
  * hostName is determined first from the JVM parameter -DhostName, but
  * if missing, then from {@link java.net.InetAddress#getLocalHost()}.
  * <p/>
+ * The context built from JVM parameters is available via {@link #getInstance()}.
+ * Processes serving several logical environments can create additional contexts
+ * via {@link #Context(String, String, String)} and pass them to
+ * {@link com.bitcup.configurator.FileConfig}.
+ * <p/>
  * User: omar
  */
 public class Context {
@@ -64,6 +69,20 @@ public class Context {
         return instance;
     }
 
+    /**
+     * Creates a context independent of the JVM parameters.  Null or empty
+     * values leave the corresponding layer out.
+     *
+     * @param env        environment name
+     * @param hostName   host name
+     * @param configPath local configuration path
+     */
+    public Context(String env, String hostName, String configPath) {
+        this.env = StringUtils.isEmpty(env) ? null : env;
+        this.hostName = StringUtils.isEmpty(hostName) ? null : hostName;
+        this.configPath = StringUtils.isEmpty(configPath) ? null : configPath;
+    }
+
     private Context() {
         this.configPath = readJVMParam(CONFIG_PATH);
         this.env = readJVMParam(ENV);
@@ -111,6 +130,11 @@ public class Context {
         return !StringUtils.isEmpty(env);
     }
 
+    @Override
+    public String toString() {
+        return "Context{env=" + env + ", hostName=" + hostName + ", configPath=" + configPath + "}";
+    }
+
     private String getLocalHostName() {
         String hostname = null;
         try {
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decrypted values of a {@link com.bitcup.configurator.FileConfig}, so that each
+ * encrypted value is decrypted once rather than on every read.  Plaintexts are
+ * kept as char arrays and wiped as soon as the value they were decrypted from is
+ * no longer served: when a new version changes or removes the property, or when
+ * the cache is cleared.
+ * <p/>
+ * A reader still holding a retired version may ask for a value that has just been
+ * wiped; it gets the plaintext, but the cache only keeps it if the version served
+ * still holds the same ciphertext.
+ * <p/>
+ * Note that the Strings handed out by the getters are copies the cache cannot wipe.
+ * <p/>
+ * User: omar
+ */
+class DecryptionCache {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AbstractSnapshotConfig config;
+
+    /**
+     * @param config configuration whose served values are cached
+     */
+    DecryptionCache(AbstractSnapshotConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @param key         property key
+     * @param cipherText  encrypted value of the property
+     * @param keyProvider provider of the decryption key
+     * @return the decrypted value
+     */
+    String get(String key, String cipherText, KeyProvider keyProvider) {
+        final Entry cached = entries.get(key);
+        if (cached != null && cached.cipherText.equals(cipherText)) {
+            final String plainText = cached.read();
+            if (plainText != null) {
+                return plainText;
+            }
+        }
+        final Entry entry = new Entry(cipherText, EncryptedValues.decrypt(cipherText, keyProvider.getKey()));
+        final String plainText = entry.read();
+        final Entry replaced = entries.put(key, entry);
+        if (replaced != null) {
+            replaced.wipe();
+        }
+        // read from a version retired meanwhile: versions are swapped before being
+        // retired, so either this sees the swap or retire() sees the entry
+        final ConfigVersion served = config.getCurrentVersion();
+        if (served == null || !cipherText.equals(served.getProperties().get(key))) {
+            if (entries.remove(key, entry)) {
+                entry.wipe();
+            }
+        }
+        return plainText;
+    }
+
+    /**
+     * Wipes the plaintexts of the properties changed or removed between two versions.
+     */
+    void retire(ConfigVersion from, ConfigVersion to) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        from.diff(to, new PersistentMap.DiffVisitor<String, Object>() {
+            @Override
+            public void added(String key, Object value) {
+                // nothing decrypted yet
+            }
+
+            @Override
+            public void removed(String key, Object value) {
+                wipe(key);
+            }
+
+            @Override
+            public void changed(String key, Object oldValue, Object newValue) {
+                wipe(key);
+            }
+        });
+    }
+
+    /**
+     * Wipes all plaintexts.
+     */
+    void clear() {
+        for (String key : entries.keySet()) {
+            wipe(key);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void wipe(String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            entry.wipe();
+        }
+    }
+
+    private static class Entry {
+        final String cipherText;
+        private char[] plainText;
+
+        Entry(String cipherText, char[] plainText) {
+            this.cipherText = cipherText;
+            this.plainText = plainText;
+        }
+
+        /**
+         * @return the plaintext, or null if wiped
+         */
+        synchronized String read() {
+            return plainText == null ? null : new String(plainText);
+        }
+
+        synchronized void wipe() {
+            if (plainText != null) {
+                Arrays.fill(plainText, '\0');
+                plainText = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.ConfigurationRuntimeException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Encrypts and decrypts property values of the form <code>ENC(...)</code>, where
+ * the parentheses hold the base64 encoding of a random 12 byte IV followed by the
+ * AES/GCM ciphertext of the UTF-8 value.
+ * <p/>
+ * User: omar
+ */
+public final class EncryptedValues {
+
+    public static final String PREFIX = "ENC(";
+    public static final String SUFFIX = ")";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final SecureRandom random = new SecureRandom();
+
+    private EncryptedValues() {
+    }
+
+    public static boolean isEncrypted(String value) {
+        return value != null && value.startsWith(PREFIX) && value.endsWith(SUFFIX);
+    }
+
+    /**
+     * @param bits key size: 128, 192 or 256
+     * @return a new random AES key
+     */
+    public static SecretKey generateKey(int bits) {
+        try {
+            final KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(bits, random);
+            return generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new ConfigurationRuntimeException("Unable to generate key", e);
+        }
+    }
+
+    /**
+     * @return the value encrypted with the given key, as <code>ENC(...)</code>
+     */
+    public static String encrypt(String plainText, SecretKey key) {
+        try {
+            final byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            final byte[] cipherText = cipher.doFinal(plainText.getBytes(UTF_8));
+            final byte[] out = new byte[IV_LENGTH + cipherText.length];
+            System.arraycopy(iv, 0, out, 0, IV_LENGTH);
+            System.arraycopy(cipherText, 0, out, IV_LENGTH, cipherText.length);
+            return PREFIX + Base64.getEncoder().encodeToString(out) + SUFFIX;
+        } catch (GeneralSecurityException e) {
+            throw new ConfigurationRuntimeException("Unable to encrypt value", e);
+        }
+    }
+
+    /**
+     * @param value value of the form <code>ENC(...)</code>
+     * @param key   key the value was encrypted with
+     * @return the decrypted characters, which the caller should wipe once done with them
+     */
+    public static char[] decrypt(String value, SecretKey key) {
+        if (!isEncrypted(value)) {
+            throw new IllegalArgumentException("Value is not of the form " + PREFIX + "..." + SUFFIX);
+        }
+        byte[] plainText = null;
+        try {
+            final byte[] in = Base64.getDecoder().decode(
+                    value.substring(PREFIX.length(), value.length() - SUFFIX.length()));
+            if (in.length <= IV_LENGTH) {
+                throw new ConfigurationRuntimeException("Encrypted value is too short");
+            }
+            final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, in, 0, IV_LENGTH));
+            plainText = cipher.doFinal(in, IV_LENGTH, in.length - IV_LENGTH);
+            final CharBuffer chars = UTF_8.decode(ByteBuffer.wrap(plainText));
+            final char[] result = Arrays.copyOf(chars.array(), chars.limit());
+            Arrays.fill(chars.array(), '\0');
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new ConfigurationRuntimeException("Unable to decrypt value", e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationRuntimeException("Encrypted value is not base64 encoded", e);
+        } finally {
+            if (plainText != null) {
+                Arrays.fill(plainText, (byte) 0);
+            }
+        }
+    }
+}
@@ -20,16 +20,16 @@
 package com.bitcup.configurator;
 
 import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.ConfigurationUtils;
+import org.apache.commons.configuration.ConfigurationRuntimeException;
 import org.apache.commons.configuration.PropertiesConfiguration;
-import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.URL;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -54,17 +54,61 @@ import java.util.concurrent.TimeUnit;
  * then properties in '/usr/local/app.properties' would override those in 'app.properties'
  * on the classpath.
  * <p/>
+ * The host, env and base layers are shared via {@link com.bitcup.configurator.LayerCache}
+ * by all instances resolving them to the same file, so several contexts in one process
+ * only pay for the layers that differ between them.
+ * <p/>
+ * Getters read from an immutable merged snapshot of the layers, a
+ * {@link com.bitcup.configurator.ConfigVersion}.  At most once per refresh delay a
+ * read checks the layers for changes and, if any reloaded, publishes a new version.
+ * The last {@value #DEFAULT_HISTORY_SIZE} versions are kept, structurally sharing
+ * unchanged properties, and can be listed, diffed, and pinned in place of the
+ * latest one until the next reload.  Off-heap storage modes keep only the latest
+ * version by default, as each version holds a store of its own.
+ * <p/>
+ * Values of the form <code>ENC(...)</code> returned by the String getters and
+ * {@link com.bitcup.configurator.FileConfigMap#getMap()} are decrypted with the key of the {@link com.bitcup.configurator.KeyProvider} set via
+ * {@link #setKeyProvider(KeyProvider)}, once per value rather than once per read;
+ * see {@link com.bitcup.configurator.EncryptedValues}.
+ * <p/>
+ * Merged properties are kept on the heap unless another
+ * {@link com.bitcup.configurator.StorageMode} is requested.
+ * <p/>
+ * Layers missing at load time, typically host or env files, are looked for again
+ * at most once per refresh delay and added as soon as they appear.
+ * <p/>
  * User: omar
  */
-public class FileConfig {
+public class FileConfig extends AbstractSnapshotConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(FileConfig.class);
 
     public static final int DEFAULT_REFRESH_DELAY_IN_SECONDS = 15;
+    public static final int DEFAULT_HISTORY_SIZE = 10;
     private static final String SEPARATOR = ".";
 
+    protected final Context context;
+    protected final StorageMode storageMode;
     protected CompositeConfiguration configuration = new CompositeConfiguration();
-    private int refreshDelaySecs = DEFAULT_REFRESH_DELAY_IN_SECONDS;
+    // replaced, never modified, when a layer appears
+    protected volatile Map<Layer, PropertiesConfiguration> layers = new EnumMap<Layer, PropertiesConfiguration>(Layer.class);
+    private volatile KeyAccessProfiler profiler;
+    private volatile KeyProvider keyProvider;
+    final DecryptionCache decryptionCache = new DecryptionCache(this);
+
+    // reload count of each layer when last merged into a version
+    private final Map<Layer, Long> seenReloads = new EnumMap<Layer, Long>(Layer.class);
+    // reload count of each layer when its contents were released, and the contents
+    // released, off-heap storage modes only
+    private final Map<Layer, Long> releasedLayers = new EnumMap<Layer, Long>(Layer.class);
+    private final Map<Layer, OffHeapStore> releasedValues = new EnumMap<Layer, OffHeapStore>(Layer.class);
+    // layers not found so far, mapped to the file they are looked up from
+    private final Map<Layer, String> missingLayers = new EnumMap<Layer, String>(Layer.class);
+    private long nextVersion = 1;
+    // latest version loaded, differs from the version served by the getters when pinned
+    private volatile ConfigVersion latest;
+    private final Deque<ConfigVersion> history = new ArrayDeque<ConfigVersion>();
+    private int historySize;
 
     /**
      * Loads configuration properties file at the local, host, env and base levels.
@@ -75,7 +119,7 @@ public class FileConfig {
      * @param filename name of the properties file to load
      */
     public FileConfig(String filename) {
-        createCompositeConfiguration(filename);
+        this(Context.getInstance(), filename, DEFAULT_REFRESH_DELAY_IN_SECONDS);
     }
 
     /**
@@ -87,105 +131,635 @@ public class FileConfig {
      * @param refreshDelaySecs refresh delay in seconds
      */
     public FileConfig(String filename, int refreshDelaySecs) {
-        this.refreshDelaySecs = refreshDelaySecs;
+        this(Context.getInstance(), filename, refreshDelaySecs);
+    }
+
+    /**
+     * Loads configuration properties file at the local, host, env and base levels
+     * of the given context.
+     * <p/>
+     * Configuration is refreshed at the default refresh delay value of
+     * {@value #DEFAULT_REFRESH_DELAY_IN_SECONDS}.
+     *
+     * @param context  context providing the host, env and local config path
+     * @param filename name of the properties file to load
+     */
+    public FileConfig(Context context, String filename) {
+        this(context, filename, DEFAULT_REFRESH_DELAY_IN_SECONDS);
+    }
+
+    /**
+     * Loads configuration properties file at the local, host, env and base levels
+     * of the given context and sets the refresh delay on the
+     * {@link org.apache.commons.configuration.reloading.FileChangedReloadingStrategy}.
+     *
+     * @param context          context providing the host, env and local config path
+     * @param filename         name of the properties file to load
+     * @param refreshDelaySecs refresh delay in seconds
+     */
+    public FileConfig(Context context, String filename, int refreshDelaySecs) {
+        this(context, filename, refreshDelaySecs, StorageMode.HEAP);
+    }
+
+    /**
+     * Loads configuration properties file at the local, host, env and base levels
+     * of the given context, keeping the merged properties as per the storage mode.
+     * Off-heap modes suit very large configurations: properties take a compact
+     * encoding outside the heap and the parsed layers are released once merged.
+     * They keep a history of a single version, see {@link #setHistorySize(int)}.
+     *
+     * @param context          context providing the host, env and local config path
+     * @param filename         name of the properties file to load
+     * @param refreshDelaySecs refresh delay in seconds
+     * @param storageMode      where to keep the merged properties
+     */
+    public FileConfig(Context context, String filename, int refreshDelaySecs, StorageMode storageMode) {
+        super(refreshDelaySecs);
+        this.context = context;
+        this.storageMode = storageMode;
+        // versions share nothing off-heap, each retained one costs a full store
+        this.historySize = storageMode == StorageMode.HEAP ? DEFAULT_HISTORY_SIZE : 1;
         createCompositeConfiguration(filename);
+        refresh(true);
     }
 
-    private void createCompositeConfiguration(String filename) {
-        if (Context.getInstance().hasConfigPath()) {
-            final String fn = Context.getInstance().getConfigPath() + File.separator + filename;
-            URL fileUrl = ConfigurationUtils.locate(fn);
-            if (fileUrl != null) {
-                try {
-                    PropertiesConfiguration pc = new PropertiesConfiguration(fileUrl);
-                    pc.setReloadingStrategy(getReloadingStrategy());
-                    configuration.addConfiguration(pc);
-                    logger.info("Loaded non-classpath config file " + fn);
-                } catch (ConfigurationException e) {
-                    logger.warn("Config file " + fn + " not found");
+    public Context getContext() {
+        return context;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * @return memory taken by the properties of the version currently served,
+     * compared with heap storage; in off-heap storage modes, it includes the
+     * released contents of the layers, while each other version kept in history
+     * takes about as much again as the properties served
+     */
+    public StorageFootprint getStorageFootprint() {
+        final ConfigVersion v = getCurrentVersion();
+        if (v.getProperties() instanceof OffHeapStore) {
+            long offHeapBytes = ((OffHeapStore) v.getProperties()).getOffHeapBytes();
+            refreshLock.lock();
+            try {
+                for (OffHeapStore released : releasedValues.values()) {
+                    offHeapBytes += released.getOffHeapBytes();
                 }
-            } else {
-                logger.warn("Config file " + fn + " not found");
+            } finally {
+                refreshLock.unlock();
             }
+            return new StorageFootprint(storageMode, v.getProperties().size(), offHeapBytes, 0,
+                    v.getHeapModeBytes());
+        }
+        return new StorageFootprint(storageMode, v.getProperties().size(), 0, v.getHeapModeBytes(),
+                v.getHeapModeBytes());
+    }
+
+    private void createCompositeConfiguration(String filename) {
+        missingLayers.putAll(resolveLayers(context, filename));
+        loadMissingLayers(true);
+    }
+
+    /**
+     * @param context  context providing the host, env and local config path
+     * @param filename name of the properties file
+     * @return the layers of the file in the context, in order of precedence, mapped
+     * to the path of the local file or the name of the classpath resource
+     */
+    static Map<Layer, String> resolveLayers(Context context, String filename) {
+        final Map<Layer, String> resolved = new EnumMap<Layer, String>(Layer.class);
+        if (context.hasConfigPath()) {
+            resolved.put(Layer.LOCAL, context.getConfigPath() + File.separator + filename);
         }
         // hostname-prefixed filename on classpath
-        if (Context.getInstance().hasHostName()) {
-            final String contextFilename = Context.getInstance().getHostName() + SEPARATOR + filename;
-            addToCompositeConfig(contextFilename, false);
+        if (context.hasHostName()) {
+            resolved.put(Layer.HOST, context.getHostName() + SEPARATOR + filename);
         }
         // env-prefixed filename on classpath
-        if (Context.getInstance().hasEnv()) {
-            final String contextFilename = Context.getInstance().getEnv() + SEPARATOR + filename;
-            addToCompositeConfig(contextFilename, false);
+        if (context.hasEnv()) {
+            resolved.put(Layer.ENV, context.getEnv() + SEPARATOR + filename);
         }
         // filename on classpath
-        addToCompositeConfig(filename,
-                !Context.getInstance().hasConfigPath() &&
-                        !Context.getInstance().hasHostName() &&
-                        !Context.getInstance().hasEnv());
+        resolved.put(Layer.BASE, filename);
+        return resolved;
     }
 
-    private void addToCompositeConfig(String filename, boolean logWithThrowable) {
-        try {
-            if (logger.isTraceEnabled()) {
-                logger.trace("Attempting to load config file " + filename + " on the classpath...");
+    /**
+     * Loads the layers that were missing so far and exist now.  Missing layers
+     * are looked up without throwing: classpath layers via the known-missing
+     * entries of {@link com.bitcup.configurator.ClasspathIndex}, re-probed at
+     * most once per refresh delay and never more often than every
+     * {@value com.bitcup.configurator.ClasspathIndex#MIN_REPROBE_INTERVAL_MILLIS} ms,
+     * and the local layer via a file check.
+     *
+     * @param initial true when loading the configuration for the first time
+     * @return true if any layer was added
+     */
+    private boolean loadMissingLayers(boolean initial) {
+        boolean added = false;
+        final Iterator<Map.Entry<Layer, String>> it = missingLayers.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Layer, String> missing = it.next();
+            final PropertiesConfiguration pc = missing.getKey() == Layer.LOCAL
+                    ? loadLocalLayer(missing.getValue(), initial)
+                    : loadClasspathLayer(missing.getValue(), initial);
+            if (pc != null) {
+                addLayer(missing.getKey(), pc);
+                it.remove();
+                added = true;
             }
-            PropertiesConfiguration pc = new PropertiesConfiguration(filename);
+        }
+        return added;
+    }
+
+    private PropertiesConfiguration loadLocalLayer(String fn, boolean initial) {
+        final File file = new File(fn);
+        if (!file.isFile()) {
+            if (initial) {
+                logger.warn("Config file " + fn + " not found");
+            }
+            return null;
+        }
+        try {
+            PropertiesConfiguration pc = new PropertiesConfiguration(file);
             pc.setReloadingStrategy(getReloadingStrategy());
-            configuration.addConfiguration(pc);
-            logger.info("Loaded config file " + filename + " on the classpath");
+            logger.info("Loaded non-classpath config file " + fn);
+            return pc;
         } catch (ConfigurationException e) {
-            if (logWithThrowable) {
-                logger.warn("Config file " + filename + " not found on classpath", e);
-            } else {
+            logger.warn("Unable to load config file " + fn, e);
+            return null;
+        }
+    }
+
+    private PropertiesConfiguration loadClasspathLayer(String filename, boolean initial) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Attempting to load config file " + filename + " on the classpath...");
+        }
+        final URL url = initial
+                ? ClasspathIndex.getInstance().locate(filename)
+                : ClasspathIndex.getInstance().revalidate(filename, TimeUnit.SECONDS.toMillis(this.refreshDelaySecs));
+        if (url == null) {
+            if (initial) {
                 logger.warn("Config file " + filename + " not found on classpath");
             }
+            return null;
+        }
+        try {
+            final PropertiesConfiguration pc;
+            if (storageMode == StorageMode.HEAP) {
+                pc = LayerCache.getInstance().getLayer(url);
+            } else {
+                // released after each merge, so it cannot be shared
+                pc = new PropertiesConfiguration(url);
+                pc.setReloadingStrategy(getReloadingStrategy());
+            }
+            logger.info("Loaded config file " + filename + " on the classpath");
+            return pc;
+        } catch (ConfigurationException e) {
+            logger.warn("Unable to load config file " + filename + " on the classpath", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a layer, keeping the layers of the composite configuration in order of precedence.
+     */
+    private void addLayer(Layer layer, PropertiesConfiguration pc) {
+        final Map<Layer, PropertiesConfiguration> updated = new EnumMap<Layer, PropertiesConfiguration>(layers);
+        updated.put(layer, pc);
+        for (PropertiesConfiguration c : layers.values()) {
+            configuration.removeConfiguration(c);
+        }
+        for (PropertiesConfiguration c : updated.values()) {
+            configuration.addConfiguration(c);
+        }
+        layers = updated;
+    }
+
+    private LayerReloadingStrategy getReloadingStrategy() {
+        return new LayerReloadingStrategy(TimeUnit.SECONDS.toMillis(this.refreshDelaySecs));
+    }
+
+    /**
+     * Gives each layer a chance to reload and publishes a new version if any did.
+     *
+     * @param force merge the layers even if none reloaded
+     */
+    @Override
+    protected void check(boolean force) {
+        if (reloadLayers() || force) {
+            publish();
+        }
+    }
+
+    /**
+     * Checks the layers for changes once, whatever the refresh delay, publishing a
+     * new version if any reloaded.  Lets a {@link com.bitcup.configurator.FileConfigBundle}
+     * check all its files in a single pass on its own clock.
+     *
+     * @return true if a new version was published
+     */
+    boolean poll() {
+        refreshLock.lock();
+        try {
+            final ConfigVersion previous = latest;
+            scheduleRefreshCheck();
+            check(false);
+            return latest != previous;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the layers that appeared and gives each layer a chance to reload.
+     * Must hold the refresh lock.
+     *
+     * @return true if any layer was added or reloaded, and none was read while its
+     * file was written
+     */
+    private boolean reloadLayers() {
+        boolean changed = false;
+        boolean torn = false;
+        if (!missingLayers.isEmpty() && loadMissingLayers(false)) {
+            changed = true;
+        }
+        for (Map.Entry<Layer, PropertiesConfiguration> layer : layers.entrySet()) {
+            final PropertiesConfiguration pc = layer.getValue();
+            synchronized (pc.getReloadLock()) {
+                final LayerReloadingStrategy strategy = (LayerReloadingStrategy) pc.getReloadingStrategy();
+                strategy.expire();
+                pc.reload();
+                torn |= strategy.isTorn();
+            }
+            // recorded by publish() once merged, so that a failed merge is tried again
+            if (!Long.valueOf(reloadCount(pc)).equals(seenReloads.get(layer.getKey()))) {
+                changed = true;
+            }
+        }
+        if (torn) {
+            logger.debug("Config file changed while reloaded, keeping version " + latest.getVersion()
+                    + " until it settles");
+        }
+        return changed && !torn;
+    }
+
+    /**
+     * Merges the layers into a new version, derived from the latest one so that
+     * unchanged properties are shared, and serves it.  Must hold the refresh lock.
+     */
+    private void publish() {
+        final ConfigVersion previous = latest;
+        final Map<Layer, String> fingerprints = new EnumMap<Layer, String>(Layer.class);
+        final Map<String, Object> merged = new HashMap<String, Object>();
+        // layer each merged property comes from, heap storage mode only
+        final Map<String, Layer> winners = new HashMap<String, Layer>();
+        final Map<Layer, Long> reloadCounts = new EnumMap<Layer, Long>(Layer.class);
+        long heapModeBytes = 0;
+        // properties set programmatically override all layers
+        copyInto(merged, configuration.getInMemoryConfiguration());
+        for (Map.Entry<Layer, PropertiesConfiguration> layer : layers.entrySet()) {
+            final PropertiesConfiguration pc = layer.getValue();
+            final Map<String, Object> values = new HashMap<String, Object>();
+            // a layer shared with other instances may be reloaded by them at any time
+            synchronized (pc.getReloadLock()) {
+                final long reloads = reloadCount(pc);
+                final Long released = releasedLayers.get(layer.getKey());
+                if (released != null && released == reloads) {
+                    // released and not reloaded since, even if its file is gone meanwhile
+                    values.putAll(releasedValues.get(layer.getKey()));
+                } else {
+                    // every access to the layer checks for changes, it must not reload halfway through
+                    final LayerReloadingStrategy strategy = (LayerReloadingStrategy) pc.getReloadingStrategy();
+                    strategy.hold();
+                    try {
+                        copyInto(values, pc);
+                        if (storageMode != StorageMode.HEAP) {
+                            pc.clear();
+                        }
+                    } finally {
+                        strategy.release();
+                    }
+                    if (storageMode != StorageMode.HEAP) {
+                        releasedValues.put(layer.getKey(), OffHeapStore.build(values, storageMode == StorageMode.MAPPED));
+                        releasedLayers.put(layer.getKey(), reloads);
+                    }
+                }
+                reloadCounts.put(layer.getKey(), reloads);
+            }
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                if (!merged.containsKey(e.getKey())) {
+                    merged.put(e.getKey(), e.getValue());
+                    if (storageMode == StorageMode.HEAP) {
+                        winners.put(e.getKey(), layer.getKey());
+                    }
+                }
+            }
+            heapModeBytes += OffHeapStore.estimateHeapBytes(values);
+            fingerprints.put(layer.getKey(), pc.getURL() + "@"
+                    + ((LayerReloadingStrategy) pc.getReloadingStrategy()).getLastModified()
+                    + "#" + Integer.toHexString(values.hashCode()));
+        }
+        heapModeBytes += OffHeapStore.estimateHeapBytes(merged);
+
+        final Map<String, Object> properties;
+        final Map<String, Layer> origins;
+        if (storageMode == StorageMode.HEAP) {
+            properties = derive(previous == null ? null : previous.getProperties(), merged);
+            origins = derive(previous == null ? null : previous.getOrigins(), winners);
+        } else {
+            properties = previous != null && previous.getProperties().equals(merged)
+                    ? previous.getProperties() : OffHeapStore.build(merged, storageMode == StorageMode.MAPPED);
+            origins = null;
+        }
+        seenReloads.putAll(reloadCounts);
+        if (previous != null && properties == previous.getProperties() && origins == previous.getOrigins()) {
+            logger.debug("Config layers reloaded without changes, still serving version " + previous.getVersion());
+            return;
+        }
+
+        final ConfigVersion version = new ConfigVersion(nextVersion++, System.currentTimeMillis(), fingerprints,
+                properties, origins, heapModeBytes);
+        synchronized (history) {
+            history.addLast(version);
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
+        if (getCurrentVersion() != previous) {
+            logger.info("Unpinning version " + getCurrentVersion().getVersion() + " after reload");
+        }
+        latest = version;
+        serve(version);
+        if (previous != null) {
+            logger.info("Loaded config " + version);
+        }
+    }
+
+    /**
+     * @return a persistent map holding the given entries, derived from the previous
+     * one so that unchanged entries are shared, or the previous one itself if equal
+     */
+    private static <V> PersistentMap<String, V> derive(Map<String, V> previous, Map<String, V> entries) {
+        PersistentMap<String, V> pm = previous == null
+                ? PersistentMap.<String, V>empty() : (PersistentMap<String, V>) previous;
+        for (Map.Entry<String, V> e : entries.entrySet()) {
+            pm = pm.plus(e.getKey(), e.getValue());
+        }
+        if (previous != null) {
+            for (String key : previous.keySet()) {
+                if (!entries.containsKey(key)) {
+                    pm = pm.minus(key);
+                }
+            }
+        }
+        return pm;
+    }
+
+    private static long reloadCount(PropertiesConfiguration pc) {
+        return ((LayerReloadingStrategy) pc.getReloadingStrategy()).getReloadCount();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void copyInto(Map<String, Object> values, Configuration source) {
+        final Iterator<String> keys = source.getKeys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            final Object value = source.getProperty(key);
+            if (value instanceof List) {
+                values.put(key, Collections.unmodifiableList(new ArrayList<Object>((List<Object>) value)));
+            } else if (value != null) {
+                values.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Sets a property overriding all layers and publishes a new version with it.
+     */
+    void setProperty(String key, Object value) {
+        refreshLock.lock();
+        try {
+            configuration.getInMemoryConfiguration().setProperty(key, value);
+            publish();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * @return versions in the history, oldest first
+     */
+    public List<ConfigVersion> getVersions() {
+        synchronized (history) {
+            return new ArrayList<ConfigVersion>(history);
+        }
+    }
+
+    /**
+     * @return most recently loaded version
+     */
+    public ConfigVersion getLatestVersion() {
+        return latest;
+    }
+
+    /**
+     * @param fromVersion older version number
+     * @param toVersion   newer version number
+     * @return properties added, removed and changed between the two versions
+     * @throws IllegalArgumentException if either version is no longer in the history
+     */
+    public ConfigDiff diff(long fromVersion, long toVersion) {
+        return new ConfigDiff(getVersion(fromVersion), getVersion(toVersion));
+    }
+
+    /**
+     * Serves the given version instead of the latest one until the next reload
+     * that changes the properties, or until {@link #unpin()}.
+     *
+     * @param version version number
+     * @throws IllegalArgumentException if the version is no longer in the history
+     */
+    public void pin(long version) {
+        // a concurrent publish must not be undone by serving a version read before it
+        refreshLock.lock();
+        try {
+            final ConfigVersion v = getVersion(version);
+            serve(v);
+            logger.warn("Pinned config version " + v);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Pins the version preceding the one currently served.
+     *
+     * @throws IllegalStateException if the history holds no older version
+     */
+    public void rollback() {
+        refreshLock.lock();
+        try {
+            final long current = getCurrentVersion().getVersion();
+            ConfigVersion previous = null;
+            synchronized (history) {
+                for (ConfigVersion v : history) {
+                    if (v.getVersion() < current) {
+                        previous = v;
+                    }
+                }
+            }
+            if (previous == null) {
+                throw new IllegalStateException("No version older than " + current + " in history");
+            }
+            pin(previous.getVersion());
+        } finally {
+            refreshLock.unlock();
         }
     }
 
-    private FileChangedReloadingStrategy getReloadingStrategy() {
-        final FileChangedReloadingStrategy reloadingStrategy = new FileChangedReloadingStrategy();
-        reloadingStrategy.setRefreshDelay(TimeUnit.SECONDS.toMillis(this.refreshDelaySecs));
-        return reloadingStrategy;
+    /**
+     * Serves the latest version again.
+     */
+    public void unpin() {
+        refreshLock.lock();
+        try {
+            serve(latest);
+        } finally {
+            refreshLock.unlock();
+        }
     }
 
-    public String getString(String key) {
-        return configuration.getString(key);
+    public boolean isPinned() {
+        return getCurrentVersion() != latest;
     }
 
-    public String getString(String key, String defaultValue) {
-        return configuration.getString(key, defaultValue);
+    /**
+     * Sets the number of versions to keep, {@value #DEFAULT_HISTORY_SIZE} by default in
+     * heap storage mode and 1 in off-heap storage modes, where every version kept
+     * holds a full copy of the properties.
+     *
+     * @param historySize number of versions to keep, at least 1
+     */
+    public void setHistorySize(int historySize) {
+        if (historySize < 1) {
+            throw new IllegalArgumentException("History size must be at least 1, was " + historySize);
+        }
+        synchronized (history) {
+            this.historySize = historySize;
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
     }
 
-    public Boolean getBoolean(String key) {
-        return configuration.getBoolean(key);
+    @Override
+    protected void serve(ConfigVersion version) {
+        final ConfigVersion previous = getCurrentVersion();
+        super.serve(version);
+        if (previous != null && previous != version) {
+            decryptionCache.retire(previous, version);
+        }
     }
 
-    public Boolean getBoolean(String key, Boolean defaultValue) {
-        return configuration.getBoolean(key, defaultValue);
+    /**
+     * Enables decryption of <code>ENC(...)</code> values, or disables it if null,
+     * wiping any value decrypted so far.
+     * <p/>
+     * Values are decrypted by {@link #getString(String)}, {@link #getString(String, String)}
+     * and the map of a {@link com.bitcup.configurator.FileConfigMap}.  {@link #getList(String)},
+     * {@link #getConfiguration()} and the versions return them encrypted, as does a
+     * {@link com.bitcup.configurator.FileConfigBundle}.
+     *
+     * @param keyProvider provider of the decryption key
+     */
+    public void setKeyProvider(KeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
+        decryptionCache.clear();
     }
 
-    public Integer getInt(String key) {
-        return configuration.getInt(key);
+    @Override
+    protected String resolve(String key, String value) {
+        final KeyProvider kp = keyProvider;
+        if (kp == null || !EncryptedValues.isEncrypted(value)) {
+            return value;
+        }
+        try {
+            return decryptionCache.get(key, value, kp);
+        } catch (ConfigurationRuntimeException e) {
+            throw new ConfigurationRuntimeException("Unable to decrypt value of " + key, e);
+        }
     }
 
-    public Integer getInt(String key, Integer defaultValue) {
-        return configuration.getInt(key, defaultValue);
+    private ConfigVersion getVersion(long version) {
+        synchronized (history) {
+            for (ConfigVersion v : history) {
+                if (v.getVersion() == version) {
+                    return v;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Version " + version + " is not in history");
     }
 
-    public Long getLong(String key) {
-        return configuration.getLong(key);
+    /**
+     * Starts counting reads made through the getters of this instance, replacing
+     * any counters collected so far.
+     *
+     * @param sampleRate record one read out of every sampleRate reads; 1 records every read
+     * @return the profiler collecting the counts
+     * @throws IllegalStateException in off-heap storage modes, whose versions do not
+     * record the layer each property comes from
+     */
+    public KeyAccessProfiler enableAccessProfiling(int sampleRate) {
+        if (storageMode != StorageMode.HEAP) {
+            throw new IllegalStateException("Key access profiling needs the layer of each property, not recorded in "
+                    + storageMode + " storage mode");
+        }
+        final KeyAccessProfiler p = new KeyAccessProfiler(sampleRate);
+        this.profiler = p;
+        logger.info("Enabled key access profiling with sample rate " + sampleRate);
+        return p;
+    }
+
+    public void disableAccessProfiling() {
+        this.profiler = null;
     }
 
-    public Long getLong(String key, Long defaultValue) {
-        return configuration.getLong(key, defaultValue);
+    public KeyAccessProfiler getAccessProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @param topN number of hot keys to include
+     * @return report of the reads counted since profiling was enabled, or null if
+     * profiling is disabled
+     */
+    public KeyAccessReport getAccessReport(int topN) {
+        final KeyAccessProfiler p = profiler;
+        return p == null ? null : p.report(topN, layers);
     }
 
-    public List<Object> getList(String key) {
-        return configuration.getList(key);
+    /**
+     * @param key property key
+     * @return the layer serving the key in the version currently served, or null if
+     * none does or its value was set programmatically; always null in off-heap
+     * storage modes, see {@link ConfigVersion#getWinningLayer(String)}
+     */
+    public Layer getWinningLayer(String key) {
+        return getCurrentVersion().getWinningLayer(key);
     }
 
-    public List<Object> getList(String key, List<Object> defaultValue) {
-        return configuration.getList(key, defaultValue);
+    @Override
+    protected void onRead(ConfigVersion version, String key) {
+        final KeyAccessProfiler p = profiler;
+        if (p != null && p.sample()) {
+            if (version.isOverridden(key)) {
+                p.recordOverride(key);
+            } else {
+                p.record(key, version.getWinningLayer(key));
+            }
+        }
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Loads several properties files, each through the local, host, env and base layers
+ * of a {@link com.bitcup.configurator.FileConfig}, into a single snapshot in which
+ * the properties of each file are prefixed by its namespace: the filename without
+ * its extension.  For example, property 'url' of 'db.properties' reads as 'db.url'.
+ * <p/>
+ * At most once per refresh delay, a read checks the layers of all files in one
+ * pass and, if any changed, publishes a new snapshot holding the changes of all
+ * files at once, so that values read from the same snapshot, see
+ * {@link #getConfiguration()}, are always consistent across files.
+ * <p/>
+ * User: omar
+ */
+public class FileConfigBundle extends AbstractSnapshotConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileConfigBundle.class);
+
+    private static final String SEPARATOR = ".";
+
+    private final Context context;
+    // files by namespace, in the order given
+    private final Map<String, FileConfig> files = new LinkedHashMap<String, FileConfig>();
+
+    // version of each file merged into the version served
+    private final Map<String, ConfigVersion> merged = new HashMap<String, ConfigVersion>();
+    private long nextVersion = 1;
+
+    /**
+     * Loads the configuration properties files at the local, host, env and base levels.
+     * <p/>
+     * Configuration is refreshed at the default refresh delay value of
+     * {@value com.bitcup.configurator.FileConfig#DEFAULT_REFRESH_DELAY_IN_SECONDS}.
+     *
+     * @param filenames names of the properties files to load
+     */
+    public FileConfigBundle(List<String> filenames) {
+        this(Context.getInstance(), filenames, FileConfig.DEFAULT_REFRESH_DELAY_IN_SECONDS);
+    }
+
+    /**
+     * Loads the configuration properties files at the local, host, env and base levels.
+     *
+     * @param filenames        names of the properties files to load
+     * @param refreshDelaySecs refresh delay in seconds
+     */
+    public FileConfigBundle(List<String> filenames, int refreshDelaySecs) {
+        this(Context.getInstance(), filenames, refreshDelaySecs);
+    }
+
+    /**
+     * Loads the configuration properties files at the local, host, env and base levels
+     * of the given context.
+     *
+     * @param context          context providing the host, env and local config path
+     * @param filenames        names of the properties files to load
+     * @param refreshDelaySecs refresh delay in seconds
+     * @throws IllegalArgumentException if two files have the same namespace, or the
+     * namespace of one is a prefix of the other's, such as 'db' and 'db.pool', as
+     * their properties could collide
+     */
+    public FileConfigBundle(Context context, List<String> filenames, int refreshDelaySecs) {
+        super(refreshDelaySecs);
+        this.context = context;
+        for (String filename : filenames) {
+            final String namespace = getNamespace(filename);
+            for (String other : files.keySet()) {
+                if (other.equals(namespace) || other.startsWith(namespace + SEPARATOR)
+                        || namespace.startsWith(other + SEPARATOR)) {
+                    throw new IllegalArgumentException("Namespace " + namespace + " of file " + filename
+                            + " overlaps namespace " + other + " of another file");
+                }
+            }
+            final FileConfig file = new FileConfig(context, filename, refreshDelaySecs);
+            // versions are kept by the bundle
+            file.setHistorySize(1);
+            files.put(namespace, file);
+        }
+        refresh(true);
+    }
+
+    /**
+     * @param filename name of a properties file
+     * @return the filename without its extension
+     */
+    public static String getNamespace(String filename) {
+        final int extension = filename.lastIndexOf(SEPARATOR);
+        return extension > 0 ? filename.substring(0, extension) : filename;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return namespaces of the files, in the order given
+     */
+    public Set<String> getNamespaces() {
+        return Collections.unmodifiableSet(files.keySet());
+    }
+
+    /**
+     * Checks all files once and publishes a single version with the changes of
+     * every file that changed.
+     *
+     * @param force publish even if no file changed
+     */
+    @Override
+    protected void check(boolean force) {
+        final ConfigVersion served = getCurrentVersion();
+        final Merger merger = new Merger(served == null
+                ? PersistentMap.<String, Object>empty() : (PersistentMap<String, Object>) served.getProperties());
+        for (Map.Entry<String, FileConfig> file : files.entrySet()) {
+            final String namespace = file.getKey();
+            final FileConfig fc = file.getValue();
+            if (fc.poll() || !merged.containsKey(namespace)) {
+                merger.merge(namespace, merged.put(namespace, fc.getLatestVersion()), fc.getLatestVersion());
+            }
+        }
+        if (served == null || merger.properties != served.getProperties()) {
+            final ConfigVersion version = new ConfigVersion(nextVersion++, System.currentTimeMillis(),
+                    Collections.<Layer, String>emptyMap(), merger.properties, null, 0);
+            if (served != null) {
+                logger.info("Loaded config bundle version " + version.getVersion() + " from " + merger.changed);
+            }
+            serve(version);
+        }
+    }
+
+    /**
+     * @param namespace namespace of a file
+     * @return read-only snapshot of the properties of the file, without namespace
+     * @throws IllegalArgumentException if no file has the namespace
+     */
+    public Configuration getConfiguration(String namespace) {
+        if (!files.containsKey(namespace)) {
+            throw new IllegalArgumentException("No file with namespace " + namespace + " in bundle " + files.keySet());
+        }
+        return snapshot().getConfiguration().subset(namespace);
+    }
+
+    /**
+     * Applies the changes between two versions of a file to the namespaced properties,
+     * sharing everything else with the version served.
+     */
+    private static class Merger implements PersistentMap.DiffVisitor<String, Object> {
+        private PersistentMap<String, Object> properties;
+        private String prefix;
+        private final List<String> changed = new ArrayList<String>();
+
+        private Merger(PersistentMap<String, Object> properties) {
+            this.properties = properties;
+        }
+
+        private void merge(String namespace, ConfigVersion from, ConfigVersion to) {
+            prefix = namespace + SEPARATOR;
+            changed.add(namespace);
+            if (from == null) {
+                for (Map.Entry<String, Object> e : to.getProperties().entrySet()) {
+                    added(e.getKey(), e.getValue());
+                }
+            } else {
+                from.diff(to, this);
+            }
+        }
+
+        @Override
+        public void added(String key, Object value) {
+            properties = properties.plus(prefix + key, value);
+        }
+
+        @Override
+        public void removed(String key, Object value) {
+            properties = properties.minus(prefix + key);
+        }
+
+        @Override
+        public void changed(String key, Object oldValue, Object newValue) {
+            properties = properties.plus(prefix + key, newValue);
+        }
+    }
+}
@@ -47,7 +47,7 @@ public class FileConfigMap extends FileConfig {
      */
     public FileConfigMap(String filename) {
         super(filename);
-        this.map = new ConfigurationMap(this.configuration);
+        this.map = new ConfigurationMap(new LiveConfiguration(this));
     }
 
     /**
@@ -60,7 +60,20 @@ public class FileConfigMap extends FileConfig {
      */
     public FileConfigMap(String filename, int refreshDelaySecs) {
         super(filename, refreshDelaySecs);
-        this.map = new ConfigurationMap(this.configuration);
+        this.map = new ConfigurationMap(new LiveConfiguration(this));
+    }
+
+    /**
+     * Loads configuration properties file at the local, host, env and base levels
+     * of the given context and exposes them as a {@link java.util.Map}.
+     *
+     * @param context          context providing the host, env and local config path
+     * @param filename         name of the properties file to load
+     * @param refreshDelaySecs refresh delay in seconds
+     */
+    public FileConfigMap(Context context, String filename, int refreshDelaySecs) {
+        super(context, filename, refreshDelaySecs);
+        this.map = new ConfigurationMap(new LiveConfiguration(this));
     }
 
     public Map getMap() {
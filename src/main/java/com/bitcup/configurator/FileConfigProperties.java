@@ -65,6 +65,18 @@ public class FileConfigProperties extends Properties {
         fileConfig = new FileConfig(filename, refreshDelaySecs);
     }
 
+    /**
+     * Loads configuration properties file at the local, host, env and base levels
+     * of the given context and exposes them as a {@link java.util.Map}.
+     *
+     * @param context          context providing the host, env and local config path
+     * @param filename         name of the properties file to load
+     * @param refreshDelaySecs refresh delay in seconds
+     */
+    public FileConfigProperties(Context context, String filename, int refreshDelaySecs) {
+        fileConfig = new FileConfig(context, filename, refreshDelaySecs);
+    }
+
     @Override
     public String getProperty(String key) {
         return fileConfig.getString(key);
@@ -82,12 +94,12 @@ public class FileConfigProperties extends Properties {
 
     @Override
     public boolean isEmpty() {
-        return this.fileConfig.configuration.isEmpty();
+        return this.fileConfig.getConfiguration().isEmpty();
     }
 
     @Override
     public String toString() {
-        return this.fileConfig.configuration.toString();
+        return this.fileConfig.getConfiguration().toString();
     }
 
     @Override
@@ -117,7 +129,7 @@ public class FileConfigProperties extends Properties {
      */
     @Override
     public Object setProperty(final String k, final String v) {
-        this.fileConfig.configuration.setProperty(k, v);
+        this.fileConfig.setProperty(k, v);
         return null;
     }
 
@@ -128,7 +140,7 @@ public class FileConfigProperties extends Properties {
 
     @Override
     public Object get(final Object o) {
-        return this.fileConfig.configuration.getString((String) o);
+        return this.fileConfig.getString((String) o);
     }
 
     @Override
@@ -211,7 +223,7 @@ public class FileConfigProperties extends Properties {
     }
 
     private Iterator<String> getKeysIterator() {
-        return this.fileConfig.configuration.getKeys();
+        return this.fileConfig.getConfiguration().getKeys();
     }
 
     private Hashtable<String, String> getHashTable() {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.Configuration;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts reads of configuration keys made through the getters of a
+ * {@link com.bitcup.configurator.FileConfig}, per key and per winning
+ * {@link com.bitcup.configurator.Layer} of the version read, or as overridden for
+ * values set programmatically.
+ * <p/>
+ * Reads are sampled: with a sample rate of n, roughly one read in n is recorded
+ * and counted as n reads.  Counters are {@link java.util.concurrent.atomic.LongAdder}s
+ * so that concurrent readers of the same hot key do not contend on a single field.
+ * <p/>
+ * Profiling is enabled via {@link FileConfig#enableAccessProfiling(int)}; when
+ * disabled the getters only pay for a null check.
+ * <p/>
+ * User: omar
+ */
+public class KeyAccessProfiler {
+
+    // counter slots for reads of keys set programmatically, and of keys not defined at all
+    private static final int OVERRIDDEN = Layer.values().length;
+    private static final int MISSING = OVERRIDDEN + 1;
+
+    private final int sampleRate;
+    private final long startedAt = System.currentTimeMillis();
+    private final ConcurrentHashMap<String, KeyCounters> counters = new ConcurrentHashMap<String, KeyCounters>();
+
+    /**
+     * @param sampleRate record one read out of every sampleRate reads; 1 records every read
+     */
+    public KeyAccessProfiler(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1, was " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return true if the current read should be recorded
+     */
+    boolean sample() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Records a sampled read of the given key.
+     *
+     * @param key    key that was read
+     * @param winner layer that served the value, or null if no layer defines the key
+     */
+    void record(String key, Layer winner) {
+        counters(key).byLayer[winner == null ? MISSING : winner.ordinal()].add(sampleRate);
+    }
+
+    /**
+     * Records a sampled read of a key whose value was set programmatically.
+     */
+    void recordOverride(String key) {
+        counters(key).byLayer[OVERRIDDEN].add(sampleRate);
+    }
+
+    private KeyCounters counters(String key) {
+        KeyCounters c = counters.get(key);
+        if (c == null) {
+            c = new KeyCounters();
+            final KeyCounters existing = counters.putIfAbsent(key, c);
+            if (existing != null) {
+                c = existing;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        counters.clear();
+    }
+
+    /**
+     * Builds a report from the counters collected so far.
+     *
+     * @param topN   number of hot keys to include
+     * @param layers layers of the profiled configuration, in order of precedence
+     * @return access report
+     */
+    public KeyAccessReport report(int topN, Map<Layer, ? extends Configuration> layers) {
+        final Map<String, Long> reads = new HashMap<String, Long>();
+        final Map<Layer, Long> readsByLayer = new EnumMap<Layer, Long>(Layer.class);
+        final Map<String, Long> overriddenKeys = new TreeMap<String, Long>();
+        final Map<String, Long> missingKeys = new TreeMap<String, Long>();
+        for (Map.Entry<String, KeyCounters> e : counters.entrySet()) {
+            long total = 0;
+            for (Layer layer : Layer.values()) {
+                final long n = e.getValue().byLayer[layer.ordinal()].sum();
+                if (n > 0) {
+                    final Long sum = readsByLayer.get(layer);
+                    readsByLayer.put(layer, sum == null ? n : sum + n);
+                    total += n;
+                }
+            }
+            final long overridden = e.getValue().byLayer[OVERRIDDEN].sum();
+            if (overridden > 0) {
+                overriddenKeys.put(e.getKey(), overridden);
+                total += overridden;
+            }
+            final long missing = e.getValue().byLayer[MISSING].sum();
+            if (missing > 0) {
+                missingKeys.put(e.getKey(), missing);
+                total += missing;
+            }
+            reads.put(e.getKey(), total);
+        }
+
+        final List<Map.Entry<String, Long>> sorted = new ArrayList<Map.Entry<String, Long>>(reads.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                final int c = b.getValue().compareTo(a.getValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            }
+        });
+        final Map<String, Long> hotKeys = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> e : sorted.subList(0, Math.min(topN, sorted.size()))) {
+            hotKeys.put(e.getKey(), e.getValue());
+        }
+
+        // keys defined in some layer that were never read, and keys whose definition
+        // in a lower layer can never be served because a higher layer defines them too
+        final Set<String> neverRead = new TreeSet<String>();
+        final Map<String, Layer> shadowed = new TreeMap<String, Layer>();
+        final Set<String> seen = new HashSet<String>();
+        for (Map.Entry<Layer, ? extends Configuration> layer : layers.entrySet()) {
+            final Iterator<String> keys = layer.getValue().getKeys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                if (!seen.add(key)) {
+                    if (!shadowed.containsKey(key)) {
+                        shadowed.put(key, winningLayer(key, layers));
+                    }
+                } else if (!reads.containsKey(key)) {
+                    neverRead.add(key);
+                }
+            }
+        }
+        return new KeyAccessReport(sampleRate, startedAt, hotKeys, readsByLayer, neverRead, shadowed, overriddenKeys,
+                missingKeys);
+    }
+
+    private static Layer winningLayer(String key, Map<Layer, ? extends Configuration> layers) {
+        for (Map.Entry<Layer, ? extends Configuration> layer : layers.entrySet()) {
+            if (layer.getValue().containsKey(key)) {
+                return layer.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static class KeyCounters {
+        final LongAdder[] byLayer = new LongAdder[MISSING + 1];
+
+        KeyCounters() {
+            for (int i = 0; i < byLayer.length; i++) {
+                byLayer[i] = new LongAdder();
+            }
+        }
+    }
+}
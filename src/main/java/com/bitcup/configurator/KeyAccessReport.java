@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the counters of a {@link com.bitcup.configurator.KeyAccessProfiler}.
+ * Read counts are estimates, scaled up by the sample rate.
+ * <p/>
+ * User: omar
+ */
+public class KeyAccessReport {
+
+    private final int sampleRate;
+    private final long startedAt;
+    private final Map<String, Long> hotKeys;
+    private final Map<Layer, Long> readsByLayer;
+    private final Set<String> neverReadKeys;
+    private final Map<String, Layer> shadowedKeys;
+    private final Map<String, Long> overriddenKeys;
+    private final Map<String, Long> missingKeys;
+
+    KeyAccessReport(int sampleRate, long startedAt, Map<String, Long> hotKeys, Map<Layer, Long> readsByLayer,
+                    Set<String> neverReadKeys, Map<String, Layer> shadowedKeys, Map<String, Long> overriddenKeys,
+                    Map<String, Long> missingKeys) {
+        this.sampleRate = sampleRate;
+        this.startedAt = startedAt;
+        this.hotKeys = Collections.unmodifiableMap(hotKeys);
+        this.readsByLayer = Collections.unmodifiableMap(readsByLayer);
+        this.neverReadKeys = Collections.unmodifiableSet(neverReadKeys);
+        this.shadowedKeys = Collections.unmodifiableMap(shadowedKeys);
+        this.overriddenKeys = Collections.unmodifiableMap(overriddenKeys);
+        this.missingKeys = Collections.unmodifiableMap(missingKeys);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return most read keys and their read counts, most read first
+     */
+    public Map<String, Long> getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * @return read counts per layer that served the value
+     */
+    public Map<Layer, Long> getReadsByLayer() {
+        return readsByLayer;
+    }
+
+    /**
+     * @return keys defined in some layer that have not been read
+     */
+    public Set<String> getNeverReadKeys() {
+        return neverReadKeys;
+    }
+
+    /**
+     * @return keys defined in more than one layer, mapped to the layer that always
+     * shadows the others
+     */
+    public Map<String, Layer> getShadowedKeys() {
+        return shadowedKeys;
+    }
+
+    /**
+     * @return keys read while their value was set programmatically, overriding all
+     * layers, and their read counts
+     */
+    public Map<String, Long> getOverriddenKeys() {
+        return overriddenKeys;
+    }
+
+    /**
+     * @return keys read but not defined in any layer, and their read counts
+     */
+    public Map<String, Long> getMissingKeys() {
+        return missingKeys;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Key access report (sample rate ").append(sampleRate).append(")\n");
+        sb.append("hot keys:\n");
+        for (Map.Entry<String, Long> e : hotKeys.entrySet()) {
+            sb.append("  ").append(e.getKey()).append(" = ").append(e.getValue()).append('\n');
+        }
+        sb.append("reads by layer: ").append(readsByLayer).append('\n');
+        sb.append("never read keys: ").append(neverReadKeys).append('\n');
+        sb.append("shadowed keys: ").append(shadowedKeys).append('\n');
+        sb.append("overridden keys: ").append(overriddenKeys).append('\n');
+        sb.append("missing keys: ").append(missingKeys);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.ConfigurationRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * {@link com.bitcup.configurator.KeyProvider} reading a base64 encoded AES key from
+ * a local file, typically kept next to the configPath layer and readable only by
+ * the process owner.  Lines starting with '#' are ignored.  The file is read again
+ * when it changes, so keys can be rotated without a restart.
+ * <p/>
+ * User: omar
+ */
+public class KeyFileKeyProvider implements KeyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyFileKeyProvider.class);
+
+    private final File keyFile;
+    private long lastModified;
+    private SecretKey key;
+
+    public KeyFileKeyProvider(File keyFile) {
+        this.keyFile = keyFile;
+    }
+
+    @Override
+    public synchronized SecretKey getKey() {
+        final long modified = keyFile.lastModified();
+        if (key == null || modified != lastModified) {
+            key = readKey();
+            lastModified = modified;
+            logger.info("Loaded config decryption key from " + keyFile);
+        }
+        return key;
+    }
+
+    private SecretKey readKey() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(keyFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    final byte[] bytes = Base64.getDecoder().decode(line);
+                    try {
+                        return new SecretKeySpec(bytes, "AES");
+                    } finally {
+                        Arrays.fill(bytes, (byte) 0);
+                    }
+                }
+            }
+            throw new ConfigurationRuntimeException("No key found in key file " + keyFile);
+        } catch (IOException e) {
+            throw new ConfigurationRuntimeException("Unable to read key file " + keyFile, e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationRuntimeException("Key file " + keyFile + " does not hold a base64 encoded key", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close key file " + keyFile);
+                }
+            }
+        }
+    }
+}
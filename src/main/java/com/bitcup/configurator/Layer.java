@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+/**
+ * The configuration layers loaded by {@link com.bitcup.configurator.FileConfig},
+ * declared in order of precedence: a property defined in a layer overrides the
+ * same property defined in any layer declared after it.
+ * <p/>
+ * User: omar
+ */
+public enum Layer {
+
+    /**
+     * filename relative to {@link com.bitcup.configurator.Context#getConfigPath()}
+     */
+    LOCAL,
+
+    /**
+     * &lt;host&gt;.filename on the classpath
+     */
+    HOST,
+
+    /**
+     * &lt;env&gt;.filename on the classpath
+     */
+    ENV,
+
+    /**
+     * filename on the classpath
+     */
+    BASE
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Overrides found by a {@link com.bitcup.configurator.LayerAnalyzer} among the
+ * layers of a file in one context.
+ * <p/>
+ * User: omar
+ */
+public class LayerAnalysis {
+
+    private final Context context;
+    private final String filename;
+    private final Map<Layer, String> layers;
+    private final Map<String, Layer> shadowedKeys;
+    private final Map<String, Set<Layer>> redundantOverrides;
+    private final Map<String, Set<Layer>> deadOverrides;
+
+    LayerAnalysis(Context context, String filename, Map<Layer, String> layers, Map<String, Layer> shadowedKeys,
+                  Map<String, Set<Layer>> redundantOverrides, Map<String, Set<Layer>> deadOverrides) {
+        this.context = context;
+        this.filename = filename;
+        this.layers = Collections.unmodifiableMap(layers);
+        this.shadowedKeys = Collections.unmodifiableMap(shadowedKeys);
+        this.redundantOverrides = Collections.unmodifiableMap(redundantOverrides);
+        this.deadOverrides = Collections.unmodifiableMap(deadOverrides);
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return layers found, in order of precedence, mapped to where they were loaded from
+     */
+    public Map<Layer, String> getLayers() {
+        return layers;
+    }
+
+    /**
+     * @return keys defined in more than one layer, mapped to the layer that shadows the others
+     */
+    public Map<String, Layer> getShadowedKeys() {
+        return shadowedKeys;
+    }
+
+    /**
+     * @return keys mapped to the override layers setting the same value as the next
+     * lower layer defining them; removing these overrides changes nothing
+     */
+    public Map<String, Set<Layer>> getRedundantOverrides() {
+        return redundantOverrides;
+    }
+
+    /**
+     * @return keys mapped to the override layers whose value is never served in this
+     * context, because a higher layer defines the key as well
+     */
+    public Map<String, Set<Layer>> getDeadOverrides() {
+        return deadOverrides;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Layer analysis of ").append(filename).append(" in ").append(context).append('\n');
+        sb.append("layers:\n");
+        for (Map.Entry<Layer, String> e : layers.entrySet()) {
+            sb.append("  ").append(e.getKey()).append(" = ").append(e.getValue()).append('\n');
+        }
+        sb.append("shadowed keys: ").append(shadowedKeys).append('\n');
+        sb.append("redundant overrides: ").append(redundantOverrides).append('\n');
+        sb.append("dead overrides: ").append(deadOverrides);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Offline tool resolving the layers of a properties file in a context exactly as
+ * {@link com.bitcup.configurator.FileConfig} does, without watching them.
+ * <p/>
+ * It reports shadowed keys and the overrides that are redundant or dead, see
+ * {@link com.bitcup.configurator.LayerAnalysis}, and flattens the layers into a
+ * single file with the values served by FileConfig, placeholders resolved.  Deploy
+ * pipelines can ship the flattened file as the only layer of a node, sparing it
+ * the probing and merging of the layers at startup.
+ * <p/>
+ * For a fleet, hosts are read from a registry file whose entries are prefixed by
+ * host name, such as <code>server-1.configPath=/tmp/conf</code> and optionally
+ * <code>server-1.env=prod</code>, and the flattened properties of every host are
+ * written in the same host-prefixed format.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java com.bitcup.configurator.LayerAnalyzer [-env env] [-host host] [-configPath path]
+ *      [-registry file] [-out file] filename
+ * </pre>
+ * The classpath must hold the host, env and base files, as it would for FileConfig.
+ * <p/>
+ * User: omar
+ */
+public class LayerAnalyzer {
+
+    private static final String SEPARATOR = ".";
+    private static final String USAGE = "usage: java " + LayerAnalyzer.class.getName()
+            + " [-env env] [-host host] [-configPath path] [-registry file] [-out file] filename";
+
+    private final Context context;
+    private final String filename;
+    // layers found, in order of precedence, and where they were loaded from
+    private final Map<Layer, PropertiesConfiguration> layers = new EnumMap<Layer, PropertiesConfiguration>(Layer.class);
+    private final Map<Layer, String> sources = new EnumMap<Layer, String>(Layer.class);
+
+    /**
+     * Loads the layers of the file in the given context.
+     *
+     * @param context  context providing the host, env and local config path
+     * @param filename name of the properties file
+     * @throws ConfigurationException if a layer cannot be parsed
+     */
+    public LayerAnalyzer(Context context, String filename) throws ConfigurationException {
+        this.context = context;
+        this.filename = filename;
+        for (Map.Entry<Layer, String> layer : FileConfig.resolveLayers(context, filename).entrySet()) {
+            if (layer.getKey() == Layer.LOCAL) {
+                final File file = new File(layer.getValue());
+                if (file.isFile()) {
+                    layers.put(Layer.LOCAL, new PropertiesConfiguration(file));
+                    sources.put(Layer.LOCAL, file.getPath());
+                }
+            } else {
+                final URL url = ClasspathIndex.getInstance().locate(layer.getValue());
+                if (url != null) {
+                    layers.put(layer.getKey(), new PropertiesConfiguration(url));
+                    sources.put(layer.getKey(), url.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return layers found, in order of precedence
+     */
+    public Map<Layer, PropertiesConfiguration> getLayers() {
+        return Collections.unmodifiableMap(layers);
+    }
+
+    /**
+     * @return shadowed keys, redundant and dead overrides of the layers
+     */
+    public LayerAnalysis analyze() {
+        final Map<String, Layer> shadowed = new TreeMap<String, Layer>();
+        final Map<String, Set<Layer>> redundant = new TreeMap<String, Set<Layer>>();
+        final Map<String, Set<Layer>> dead = new TreeMap<String, Set<Layer>>();
+        for (String key : keys()) {
+            // layers defining the key, highest precedence first
+            final List<Layer> defining = new ArrayList<Layer>();
+            for (Map.Entry<Layer, PropertiesConfiguration> layer : layers.entrySet()) {
+                if (layer.getValue().containsKey(key)) {
+                    defining.add(layer.getKey());
+                }
+            }
+            if (defining.size() < 2) {
+                continue;
+            }
+            shadowed.put(key, defining.get(0));
+            for (int i = 0; i < defining.size() - 1; i++) {
+                final Layer override = defining.get(i);
+                final Object value = layers.get(override).getProperty(key);
+                if (value.equals(layers.get(defining.get(i + 1)).getProperty(key))) {
+                    add(redundant, key, override);
+                }
+                if (i > 0) {
+                    add(dead, key, override);
+                }
+            }
+        }
+        return new LayerAnalysis(context, filename, sources, shadowed, redundant, dead);
+    }
+
+    private static void add(Map<String, Set<Layer>> overrides, String key, Layer layer) {
+        Set<Layer> defining = overrides.get(key);
+        if (defining == null) {
+            defining = EnumSet.noneOf(Layer.class);
+            overrides.put(key, defining);
+        }
+        defining.add(layer);
+    }
+
+    /**
+     * @return the properties served by {@link com.bitcup.configurator.FileConfig} in
+     * the context, with placeholders resolved, ready to be saved as a single file
+     */
+    public PropertiesConfiguration flatten() {
+        final CompositeConfiguration composite = new CompositeConfiguration();
+        for (PropertiesConfiguration pc : layers.values()) {
+            composite.addConfiguration(pc);
+        }
+        final PropertiesConfiguration flat = new PropertiesConfiguration();
+        // values are taken as they are...
+        flat.setDelimiterParsingDisabled(true);
+        for (String key : keys()) {
+            final String[] values = composite.getStringArray(key);
+            flat.setProperty(key, values.length == 1 ? values[0] : Arrays.asList(values));
+        }
+        // ...and their list delimiters escaped when saved
+        flat.setDelimiterParsingDisabled(false);
+        flat.getLayout().setHeaderComment("flattened from " + filename + " layers " + layers.keySet()
+                + " in " + context);
+        return flat;
+    }
+
+    private Set<String> keys() {
+        final Set<String> keys = new TreeSet<String>();
+        for (PropertiesConfiguration pc : layers.values()) {
+            final Iterator<String> it = pc.getKeys();
+            while (it.hasNext()) {
+                keys.add(it.next());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Reads the hosts of a registry, whose entries are of the form
+     * <code>&lt;host&gt;.&lt;attribute&gt;=value</code>.  The <code>env</code> and
+     * <code>configPath</code> attributes make up the context of each host; others,
+     * such as <code>type</code>, are ignored.
+     *
+     * @param registry   registry of the hosts
+     * @param defaultEnv env of the hosts without an env attribute
+     * @return context of each host, by host name, in registry order
+     */
+    public static Map<String, Context> readRegistry(Configuration registry, String defaultEnv) {
+        final Map<String, Map<String, String>> attributes = new LinkedHashMap<String, Map<String, String>>();
+        final Iterator<String> keys = registry.getKeys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            final int separator = key.lastIndexOf(SEPARATOR);
+            if (separator <= 0) {
+                continue;
+            }
+            final String host = key.substring(0, separator);
+            if (!attributes.containsKey(host)) {
+                attributes.put(host, new HashMap<String, String>());
+            }
+            attributes.get(host).put(key.substring(separator + 1), registry.getString(key));
+        }
+        final Map<String, Context> hosts = new LinkedHashMap<String, Context>();
+        for (Map.Entry<String, Map<String, String>> host : attributes.entrySet()) {
+            final String env = host.getValue().get(Context.ENV);
+            hosts.put(host.getKey(), new Context(env == null ? defaultEnv : env, host.getKey(),
+                    host.getValue().get(Context.CONFIG_PATH)));
+        }
+        return hosts;
+    }
+
+    /**
+     * Flattens the file for every host, in the host-prefixed registry format.
+     *
+     * @param hosts    context of each host, by host name
+     * @param filename name of the properties file
+     * @param out      receives the analysis of each host, if not null
+     * @return flattened properties of all hosts, prefixed by host name
+     * @throws ConfigurationException if a layer cannot be parsed
+     */
+    public static PropertiesConfiguration flattenFleet(Map<String, Context> hosts, String filename, PrintStream out)
+            throws ConfigurationException {
+        final PropertiesConfiguration fleet = new PropertiesConfiguration();
+        fleet.setDelimiterParsingDisabled(true);
+        for (Map.Entry<String, Context> host : hosts.entrySet()) {
+            final LayerAnalyzer analyzer = new LayerAnalyzer(host.getValue(), filename);
+            if (out != null) {
+                out.println(analyzer.analyze());
+            }
+            final PropertiesConfiguration flat = analyzer.flatten();
+            final Iterator<String> keys = flat.getKeys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                fleet.setProperty(host.getKey() + SEPARATOR + key, flat.getProperty(key));
+            }
+        }
+        fleet.setDelimiterParsingDisabled(false);
+        fleet.getLayout().setHeaderComment("flattened from " + filename + " for hosts " + hosts.keySet());
+        return fleet;
+    }
+
+    public static void main(String[] args) {
+        final int status = run(args, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs the tool with the given command line arguments.
+     *
+     * @return exit status
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        final List<String> names = Arrays.asList(Context.ENV, "host", Context.CONFIG_PATH, "registry", "out");
+        final Map<String, String> parsed = new HashMap<String, String>();
+        String filename = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-") && names.contains(args[i].substring(1)) && i + 1 < args.length) {
+                parsed.put(args[i].substring(1), args[++i]);
+            } else if (filename == null && !args[i].startsWith("-")) {
+                filename = args[i];
+            } else {
+                filename = null;
+                break;
+            }
+        }
+        if (filename == null) {
+            err.println(USAGE);
+            return 2;
+        }
+        try {
+            final PropertiesConfiguration result;
+            if (parsed.containsKey("registry")) {
+                final Map<String, Context> hosts =
+                        readRegistry(new PropertiesConfiguration(new File(parsed.get("registry"))), parsed.get(Context.ENV));
+                result = flattenFleet(hosts, filename, out);
+            } else {
+                final LayerAnalyzer analyzer = new LayerAnalyzer(
+                        new Context(parsed.get(Context.ENV), parsed.get("host"), parsed.get(Context.CONFIG_PATH)), filename);
+                if (analyzer.getLayers().isEmpty()) {
+                    err.println("No layer of " + filename + " found in " + analyzer.context);
+                    return 1;
+                }
+                out.println(analyzer.analyze());
+                result = analyzer.flatten();
+            }
+            if (parsed.containsKey("out")) {
+                result.save(new File(parsed.get("out")));
+                out.println("Flattened properties written to " + parsed.get("out"));
+            }
+            return 0;
+        } catch (ConfigurationException e) {
+            err.println("Unable to flatten " + filename + ": " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton cache of parsed classpath layers shared by all
+ * {@link com.bitcup.configurator.FileConfig} instances, whatever their
+ * {@link com.bitcup.configurator.Context} and refresh delay.  Every context resolving
+ * a layer to the same source reads from a single
+ * {@link org.apache.commons.configuration.PropertiesConfiguration}, so only the
+ * layers that differ between contexts cost memory and parse time.
+ * <p/>
+ * Shared layers are still refreshed by their
+ * {@link org.apache.commons.configuration.reloading.FileChangedReloadingStrategy};
+ * a reload is seen by every configuration sharing the layer.  Each configuration
+ * checks the layer on its own refresh delay, the strategy's delay only throttles
+ * the checks made on property accesses.
+ * <p/>
+ * Layers are held weakly: once no configuration holds a layer any more, it is
+ * dropped from the cache.
+ * <p/>
+ * User: omar
+ */
+public class LayerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LayerCache.class);
+
+    private static final long ACCESS_CHECK_DELAY_MILLIS =
+            TimeUnit.SECONDS.toMillis(FileConfig.DEFAULT_REFRESH_DELAY_IN_SECONDS);
+
+    private static LayerCache instance = new LayerCache();
+
+    private final ConcurrentMap<String, LayerReference> layers = new ConcurrentHashMap<String, LayerReference>();
+    private final ReferenceQueue<PropertiesConfiguration> collected = new ReferenceQueue<PropertiesConfiguration>();
+
+    public static LayerCache getInstance() {
+        return instance;
+    }
+
+    private LayerCache() {
+    }
+
+    /**
+     * Returns the parsed layer for the given file, loading it if no other
+     * configuration holds it.
+     *
+     * @param url location of the properties file, as resolved by
+     *            {@link com.bitcup.configurator.ClasspathIndex}
+     * @return the shared layer
+     * @throws ConfigurationException if the file cannot be parsed
+     */
+    public PropertiesConfiguration getLayer(URL url) throws ConfigurationException {
+        expunge();
+        final String key = url.toExternalForm();
+        PropertiesConfiguration pc = get(key);
+        if (pc == null) {
+            synchronized (layers) {
+                pc = get(key);
+                if (pc == null) {
+                    pc = new PropertiesConfiguration(url);
+                    pc.setReloadingStrategy(new LayerReloadingStrategy(ACCESS_CHECK_DELAY_MILLIS));
+                    layers.put(key, new LayerReference(key, pc, collected));
+                    logger.debug("Cached shared config layer " + key);
+                }
+            }
+        }
+        return pc;
+    }
+
+    private PropertiesConfiguration get(String key) {
+        final LayerReference ref = layers.get(key);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Drops the entries of the layers no configuration holds any more.
+     */
+    private void expunge() {
+        Reference<? extends PropertiesConfiguration> ref;
+        while ((ref = collected.poll()) != null) {
+            final LayerReference layer = (LayerReference) ref;
+            if (layers.remove(layer.key, layer)) {
+                logger.debug("Dropped unused shared config layer " + layer.key);
+            }
+        }
+    }
+
+    /**
+     * @return true if a configuration still holds the layer of the given file
+     */
+    boolean isCached(URL url) {
+        return get(url.toExternalForm()) != null;
+    }
+
+    /**
+     * @return number of cached layers
+     */
+    public int size() {
+        expunge();
+        return layers.size();
+    }
+
+    /**
+     * Drops all cached layers; configurations already holding a layer keep it.
+     */
+    public void clear() {
+        layers.clear();
+    }
+
+    private static class LayerReference extends WeakReference<PropertiesConfiguration> {
+        final String key;
+
+        LayerReference(String key, PropertiesConfiguration layer, ReferenceQueue<PropertiesConfiguration> queue) {
+            super(layer, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
+
+import java.io.File;
+
+/**
+ * {@link org.apache.commons.configuration.reloading.FileChangedReloadingStrategy}
+ * that counts the reloads it triggers, letting every
+ * {@link com.bitcup.configurator.FileConfig} reading a (possibly shared) layer
+ * notice that the layer changed without registering listeners on it.
+ * <p/>
+ * Its own refresh delay only throttles the reload checks commons-configuration
+ * makes on every property access of the layer.
+ * <p/>
+ * A changed file is only reloaded once its modification time and size stay the same
+ * for {@link #SETTLE_MILLIS}, so that a file rewritten in place is not read while it
+ * is half-written.  If it changes again while it is read, the reload is not counted
+ * and the layer is {@link #isTorn() torn} until it reloads again.  A writer pausing
+ * longer than the settle time halfway through a file can still be read half-written;
+ * replacing the file by an atomic move never can.
+ * <p/>
+ * User: omar
+ */
+class LayerReloadingStrategy extends FileChangedReloadingStrategy {
+
+    // time a changed file must stay unchanged before it is reloaded
+    static final long SETTLE_MILLIS = 50;
+
+    private volatile long reloadCount;
+    // guarded by the configuration's reload lock
+    private int holds;
+    // modification time and size of the file when it settled, guarded by the reload lock
+    private long settledModified;
+    private long settledLength;
+    private volatile boolean torn;
+
+    LayerReloadingStrategy(long refreshDelayMillis) {
+        setRefreshDelay(refreshDelayMillis);
+    }
+
+    /**
+     * Makes the next reload check look at the file whatever the refresh delay.
+     * {@link com.bitcup.configurator.FileConfig} already checks its layers once per
+     * refresh delay; without this, the strategy's own delay, measured from a check
+     * made a moment earlier, could postpone noticing a change by a whole extra delay.
+     * Must be called holding the configuration's reload lock.
+     */
+    void expire() {
+        lastChecked = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * Suspends reloading until {@link #release()}, so that a layer read key by key,
+     * each access checking for changes, is not reloaded halfway through.  Must be
+     * called holding the configuration's reload lock.
+     */
+    void hold() {
+        holds++;
+    }
+
+    void release() {
+        holds--;
+    }
+
+    @Override
+    public boolean reloadingRequired() {
+        return holds == 0 && super.reloadingRequired() && settled();
+    }
+
+    /**
+     * Waits {@link #SETTLE_MILLIS} for the changed file to be written further.
+     *
+     * @return true if it was not, false to check again later
+     */
+    private boolean settled() {
+        final File file = getFile();
+        final long modified = file.lastModified();
+        final long length = file.length();
+        try {
+            Thread.sleep(SETTLE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (file.lastModified() != modified || file.length() != length) {
+            return false;
+        }
+        settledModified = modified;
+        settledLength = length;
+        return true;
+    }
+
+    @Override
+    public void reloadingPerformed() {
+        super.reloadingPerformed();
+        // only called by the configuration while holding its reload lock
+        final File file = getFile();
+        torn = file != null && (file.lastModified() != settledModified || file.length() != settledLength);
+        if (torn) {
+            // written again while it was read: reload once it settles again
+            lastModified = Long.MIN_VALUE;
+        } else {
+            reloadCount++;
+        }
+    }
+
+    /**
+     * @return true if the file changed while it was last reloaded, so that the layer
+     * may hold part of it until it reloads again
+     */
+    boolean isTorn() {
+        return torn;
+    }
+
+    /**
+     * @return number of reloads performed since the layer was loaded
+     */
+    long getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * @return last modification time of the layer file when it was last (re)loaded
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import java.util.Iterator;
+
+/**
+ * {@link org.apache.commons.configuration.Configuration} that always reads the
+ * version currently served by a {@link com.bitcup.configurator.FileConfig}, for
+ * adapters such as {@link org.apache.commons.configuration.ConfigurationMap} that
+ * hold on to a single configuration instance.
+ * <p/>
+ * User: omar
+ */
+class LiveConfiguration extends AbstractConfiguration {
+
+    private final FileConfig fileConfig;
+
+    LiveConfiguration(FileConfig fileConfig) {
+        this.fileConfig = fileConfig;
+    }
+
+    @Override
+    public Object getProperty(String key) {
+        final Object value = fileConfig.getConfiguration().getProperty(key);
+        // encrypted values are decrypted as by the String getters
+        return value instanceof String ? fileConfig.resolve(key, (String) value) : value;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return fileConfig.getConfiguration().containsKey(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return fileConfig.getConfiguration().isEmpty();
+    }
+
+    @Override
+    public Iterator<String> getKeys() {
+        return fileConfig.getConfiguration().getKeys();
+    }
+
+    @Override
+    public void setProperty(String key, Object value) {
+        fileConfig.setProperty(key, value);
+    }
+
+    @Override
+    protected void addPropertyDirect(String key, Object value) {
+        fileConfig.setProperty(key, value);
+    }
+
+    @Override
+    protected void clearPropertyDirect(String key) {
+        throw new UnsupportedOperationException("Properties can only be set or overridden");
+    }
+}
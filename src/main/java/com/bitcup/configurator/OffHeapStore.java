@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.ConfigurationRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Immutable map of merged properties stored outside the Java heap, in a direct or
+ * memory-mapped {@link java.nio.ByteBuffer}.
+ * <p/>
+ * The buffer starts with an open-addressed (linear probing) table of 8 byte slots,
+ * each holding the hash of a key and the offset of its entry.  Entries follow the
+ * table: the UTF-8 key, then either one UTF-8 String value or a list of them, each
+ * prefixed by its length.  Values are decoded into Strings only when read, so the
+ * heap holds nothing per property between reads.
+ * <p/>
+ * User: omar
+ */
+public final class OffHeapStore extends AbstractMap<String, Object> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int SLOT_BYTES = 8;
+    private static final byte STRING = 0;
+    private static final byte LIST = 1;
+
+    // rough heap cost, in bytes, of the objects holding one property on the heap:
+    // a String (object, hash and byte array headers) and a map entry with its references
+    private static final int HEAP_STRING_OVERHEAD = 56;
+    private static final int HEAP_ENTRY_OVERHEAD = 48;
+    private static final int HEAP_LIST_OVERHEAD = 40;
+
+    private final ByteBuffer buffer;
+    private final boolean mapped;
+    private final int mask;
+    private final int size;
+
+    private OffHeapStore(ByteBuffer buffer, boolean mapped, int capacity, int size) {
+        this.buffer = buffer;
+        this.mapped = mapped;
+        this.mask = capacity - 1;
+        this.size = size;
+    }
+
+    /**
+     * Encodes properties into a new store.
+     *
+     * @param properties String or List values keyed by property
+     * @param mapped     true to map the buffer from a temporary file, false for a direct buffer
+     * @return the store
+     */
+    public static OffHeapStore build(Map<String, Object> properties, boolean mapped) {
+        int capacity = 16;
+        while (capacity < properties.size() * 2) {
+            capacity <<= 1;
+        }
+        final List<byte[]> encoded = new ArrayList<byte[]>(properties.size() * 2);
+        long length = (long) capacity * SLOT_BYTES;
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            final byte[] key = e.getKey().getBytes(UTF_8);
+            encoded.add(key);
+            length += 4 + key.length + 1 + 4;
+            for (Object value : values(e.getValue())) {
+                final byte[] v = String.valueOf(value).getBytes(UTF_8);
+                encoded.add(v);
+                length += 4 + v.length;
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new ConfigurationRuntimeException("Properties too large for an off-heap store: " + length + " bytes");
+        }
+
+        final ByteBuffer buffer = mapped ? map((int) length) : ByteBuffer.allocateDirect((int) length);
+        int offset = capacity * SLOT_BYTES;
+        int i = 0;
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            final int hash = hash(e.getKey());
+            int slot = hash & (capacity - 1);
+            while (buffer.getInt(slot * SLOT_BYTES + 4) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            buffer.putInt(slot * SLOT_BYTES, hash);
+            // offsets are stored plus one so that 0 marks an empty slot
+            buffer.putInt(slot * SLOT_BYTES + 4, offset + 1);
+
+            offset = put(buffer, offset, encoded.get(i++));
+            final Collection<?> values = values(e.getValue());
+            buffer.put(offset++, e.getValue() instanceof List ? LIST : STRING);
+            buffer.putInt(offset, values.size());
+            offset += 4;
+            for (int n = 0; n < values.size(); n++) {
+                offset = put(buffer, offset, encoded.get(i++));
+            }
+        }
+        return new OffHeapStore(buffer, mapped, capacity, properties.size());
+    }
+
+    /**
+     * @return heap bytes the given properties would take as Java objects, roughly
+     */
+    public static long estimateHeapBytes(Map<String, Object> properties) {
+        long bytes = 0;
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            bytes += HEAP_ENTRY_OVERHEAD + HEAP_STRING_OVERHEAD + e.getKey().length();
+            if (e.getValue() instanceof List) {
+                bytes += HEAP_LIST_OVERHEAD;
+            }
+            for (Object value : values(e.getValue())) {
+                bytes += HEAP_STRING_OVERHEAD + String.valueOf(value).length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return bytes of the buffer holding the store
+     */
+    public long getOffHeapBytes() {
+        return buffer.capacity();
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int offset = find((String) key);
+        return offset < 0 ? null : decodeValue(offset);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int slot = nextSlot(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot <= mask;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (slot > mask) {
+                            throw new NoSuchElementException();
+                        }
+                        final int offset = buffer.getInt(slot * SLOT_BYTES + 4) - 1;
+                        slot = nextSlot(slot + 1);
+                        return new AbstractMap.SimpleImmutableEntry<String, Object>(
+                                decodeString(offset), decodeValue(offset));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int nextSlot(int slot) {
+        while (slot <= mask && buffer.getInt(slot * SLOT_BYTES + 4) == 0) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * @return offset of the entry of key, or -1
+     */
+    private int find(String key) {
+        final int hash = hash(key);
+        byte[] bytes = null;
+        int slot = hash & mask;
+        int offset;
+        while ((offset = buffer.getInt(slot * SLOT_BYTES + 4)) != 0) {
+            if (buffer.getInt(slot * SLOT_BYTES) == hash) {
+                if (bytes == null) {
+                    bytes = key.getBytes(UTF_8);
+                }
+                if (matches(offset - 1, bytes)) {
+                    return offset - 1;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean matches(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object decodeValue(int entryOffset) {
+        int offset = entryOffset + 4 + buffer.getInt(entryOffset);
+        final byte type = buffer.get(offset++);
+        final int count = buffer.getInt(offset);
+        offset += 4;
+        if (type == STRING) {
+            return decodeString(offset);
+        }
+        final List<Object> values = new ArrayList<Object>(count);
+        for (int n = 0; n < count; n++) {
+            values.add(decodeString(offset));
+            offset += 4 + buffer.getInt(offset);
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private String decodeString(int offset) {
+        final byte[] bytes = new byte[buffer.getInt(offset)];
+        // a duplicate keeps reads by concurrent threads from sharing a position
+        final ByteBuffer b = buffer.duplicate();
+        b.position(offset + 4);
+        b.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int put(ByteBuffer buffer, int offset, byte[] bytes) {
+        buffer.putInt(offset, bytes.length);
+        final ByteBuffer b = buffer.duplicate();
+        b.position(offset + 4);
+        b.put(bytes);
+        return offset + 4 + bytes.length;
+    }
+
+    private static Collection<?> values(Object value) {
+        return value instanceof List ? (List<?>) value : Collections.singletonList(value);
+    }
+
+    private static int hash(String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static ByteBuffer map(int length) {
+        try {
+            final File file = File.createTempFile("configurator", ".store");
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            } finally {
+                // the mapping outlives both the channel and the file name
+                raf.close();
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new ConfigurationRuntimeException("Unable to map off-heap store", e);
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import java.util.*;
+
+/**
+ * Immutable hash array mapped trie (HAMT).  {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} return a new map sharing every node not on the path to
+ * the changed key, so successive versions of a large map cost memory proportional
+ * to their differences.  {@link #diff(PersistentMap, DiffVisitor)} skips subtrees
+ * shared by both maps.
+ * <p/>
+ * Null keys and values are not supported.  The mutators inherited from
+ * {@link java.util.Map} throw {@link UnsupportedOperationException}.
+ * <p/>
+ * User: omar
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object NOT_FOUND = new Object();
+
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<Object, Object>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @return a map with all entries of the given map
+     */
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        PersistentMap<K, V> result = empty();
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            result = result.plus(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return a map associating key with value, or this map if it already does
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Null keys and values are not supported");
+        }
+        final boolean[] added = new boolean[1];
+        final Node r = (root == null ? BitmapNode.EMPTY : root).assoc(0, hash(key), key, value, added);
+        if (r == root) {
+            return this;
+        }
+        return new PersistentMap<K, V>(r, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without key, or this map if it does not contain the key
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        final Node r = root.without(0, hash(key), key);
+        if (r == root) {
+            return this;
+        }
+        return r == null ? PersistentMap.<K, V>empty() : new PersistentMap<K, V>(r, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        final Object v = root.find(0, hash(key), key);
+        return v == NOT_FOUND ? null : (V) v;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && key != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<K, V>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Reports the differences between this map and a newer one.  Subtrees shared
+     * by both maps are skipped, so diffing two versions derived from one another
+     * costs time proportional to their differences.
+     *
+     * @param newer   map to compare with
+     * @param visitor receives the keys added, removed and changed in the newer map
+     */
+    public void diff(PersistentMap<K, V> newer, DiffVisitor<K, V> visitor) {
+        diff(root, newer.root, 0, visitor);
+    }
+
+    /**
+     * Receives the differences found by {@link #diff(PersistentMap, DiffVisitor)}.
+     */
+    public interface DiffVisitor<K, V> {
+
+        void added(K key, V value);
+
+        void removed(K key, V value);
+
+        void changed(K key, V oldValue, V newValue);
+    }
+
+    // -------------------------------------------------------------------------------
+    // trie internals
+    // -------------------------------------------------------------------------------
+
+    private static int hash(Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Nodes store key/value pairs in a flat array; in a {@link BitmapNode} a null key
+     * marks a slot whose value is a child node.
+     */
+    private static abstract class Node {
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return the node without key, or null if it would be empty
+         */
+        abstract Node without(int shift, int hash, Object key);
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            final int i = 2 * index(bit);
+            final Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            final int bit = bitpos(hash, shift);
+            final int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                final Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                return new BitmapNode(bitmap | bit, a);
+            }
+            final Object k = array[i];
+            final Object v = array[i + 1];
+            if (k == null) {
+                final Node n = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                return n == v ? this : new BitmapNode(bitmap, set(array, i + 1, n));
+            }
+            if (key.equals(k)) {
+                return value.equals(v) ? this : new BitmapNode(bitmap, set(array, i + 1, value));
+            }
+            added[0] = true;
+            final Object[] a = set(array, i + 1, pair(shift + BITS, k, v, hash, key, value));
+            a[i] = null;
+            return new BitmapNode(bitmap, a);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            final int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            final int i = 2 * index(bit);
+            final Object k = array[i];
+            if (k == null) {
+                final Node child = (Node) array[i + 1];
+                final Node n = child.without(shift + BITS, hash, key);
+                if (n == child) {
+                    return this;
+                }
+                if (n != null) {
+                    return new BitmapNode(bitmap, set(array, i + 1, n));
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            final Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new BitmapNode(bitmap ^ bit, a);
+        }
+
+        private static Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            final int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+            }
+            final boolean[] added = new boolean[1];
+            return EMPTY.assoc(shift, h1, k1, v1, added).assoc(shift, h2, k2, v2, added);
+        }
+    }
+
+    /**
+     * Holds keys whose hashes are identical.
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int i = indexOf(key);
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(bitpos(this.hash, shift), new Object[]{null, this})
+                        .assoc(shift, hash, key, value, added);
+            }
+            final int i = indexOf(key);
+            if (i >= 0) {
+                return value.equals(array[i + 1]) ? this : new CollisionNode(hash, set(array, i + 1, value));
+            }
+            added[0] = true;
+            final Object[] a = Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            return new CollisionNode(hash, a);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            final int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            final Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new CollisionNode(hash, a);
+        }
+    }
+
+    private static Object[] set(Object[] array, int i, Object value) {
+        final Object[] a = array.clone();
+        a[i] = value;
+        return a;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void diff(Node a, Node b, int shift, DiffVisitor<K, V> visitor) {
+        if (a == b) {
+            return;
+        }
+        if (a == null || b == null || !(a instanceof BitmapNode) || !(b instanceof BitmapNode)) {
+            diffByLookup(a, b, shift, visitor);
+            return;
+        }
+        final BitmapNode x = (BitmapNode) a;
+        final BitmapNode y = (BitmapNode) b;
+        int bits = x.bitmap | y.bitmap;
+        while (bits != 0) {
+            final int bit = Integer.lowestOneBit(bits);
+            bits &= ~bit;
+            final boolean inX = (x.bitmap & bit) != 0;
+            final boolean inY = (y.bitmap & bit) != 0;
+            if (inX && inY) {
+                final int i = 2 * x.index(bit);
+                final int j = 2 * y.index(bit);
+                if (x.array[i] != null && y.array[j] != null) {
+                    // single entries on both sides
+                    if (x.array[i].equals(y.array[j])) {
+                        if (!x.array[i + 1].equals(y.array[j + 1])) {
+                            visitor.changed((K) x.array[i], (V) x.array[i + 1], (V) y.array[j + 1]);
+                        }
+                    } else {
+                        visitor.removed((K) x.array[i], (V) x.array[i + 1]);
+                        visitor.added((K) y.array[j], (V) y.array[j + 1]);
+                    }
+                    continue;
+                }
+            }
+            diff(inX ? slot(x, bit, shift) : null, inY ? slot(y, bit, shift) : null, shift + BITS, visitor);
+        }
+    }
+
+    /**
+     * @return the child node in the slot of bit, wrapping a single entry in a node if needed
+     */
+    private static Node slot(BitmapNode node, int bit, int shift) {
+        final int i = 2 * node.index(bit);
+        if (node.array[i] == null) {
+            return (Node) node.array[i + 1];
+        }
+        return BitmapNode.EMPTY.assoc(shift + BITS, hash(node.array[i]), node.array[i], node.array[i + 1],
+                new boolean[1]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void diffByLookup(Node a, Node b, int shift, DiffVisitor<K, V> visitor) {
+        for (EntryIterator<K, V> it = new EntryIterator<K, V>(a); it.hasNext(); ) {
+            final Map.Entry<K, V> e = it.next();
+            final Object v = b == null ? NOT_FOUND : b.find(shift, hash(e.getKey()), e.getKey());
+            if (v == NOT_FOUND) {
+                visitor.removed(e.getKey(), e.getValue());
+            } else if (!v.equals(e.getValue())) {
+                visitor.changed(e.getKey(), e.getValue(), (V) v);
+            }
+        }
+        for (EntryIterator<K, V> it = new EntryIterator<K, V>(b); it.hasNext(); ) {
+            final Map.Entry<K, V> e = it.next();
+            if (a == null || a.find(shift, hash(e.getKey()), e.getKey()) == NOT_FOUND) {
+                visitor.added(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Depth-first iteration over the entries of a trie.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object[]> arrays = new ArrayDeque<Object[]>();
+        private final Deque<Integer> positions = new ArrayDeque<Integer>();
+        private Map.Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                arrays.push(root.array);
+                positions.push(0);
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!arrays.isEmpty()) {
+                final Object[] a = arrays.peek();
+                final int i = positions.pop();
+                if (i >= a.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(i + 2);
+                if (a[i] == null) {
+                    arrays.push(((Node) a[i + 1]).array);
+                    positions.push(0);
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<K, V>((K) a[i], (V) a[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<K, V> e = next;
+            advance();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
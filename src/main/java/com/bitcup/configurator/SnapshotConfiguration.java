@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Read-only {@link org.apache.commons.configuration.Configuration} over an
+ * immutable map of merged properties.  Values are either Strings or unmodifiable
+ * lists of Strings, as parsed by {@link org.apache.commons.configuration.PropertiesConfiguration};
+ * type conversion and interpolation are inherited from
+ * {@link org.apache.commons.configuration.AbstractConfiguration}.
+ * <p/>
+ * User: omar
+ */
+public class SnapshotConfiguration extends AbstractConfiguration {
+
+    private final Map<String, Object> properties;
+
+    public SnapshotConfiguration(Map<String, Object> properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Object getProperty(String key) {
+        return properties.get(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return properties.containsKey(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return properties.isEmpty();
+    }
+
+    @Override
+    public Iterator<String> getKeys() {
+        return properties.keySet().iterator();
+    }
+
+    @Override
+    protected void addPropertyDirect(String key, Object value) {
+        throw new UnsupportedOperationException("Configuration snapshots are read-only");
+    }
+
+    @Override
+    protected void clearPropertyDirect(String key) {
+        throw new UnsupportedOperationException("Configuration snapshots are read-only");
+    }
+
+    @Override
+    public String toString() {
+        return properties.toString();
+    }
+}
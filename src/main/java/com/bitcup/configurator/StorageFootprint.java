@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+/**
+ * Memory taken by the properties of a {@link com.bitcup.configurator.FileConfig}
+ * version, compared with what the same properties take in
+ * {@link com.bitcup.configurator.StorageMode#HEAP} mode.  Heap figures are estimates.
+ * <p/>
+ * User: omar
+ */
+public class StorageFootprint {
+
+    private final StorageMode storageMode;
+    private final int entries;
+    private final long offHeapBytes;
+    private final long heapBytes;
+    private final long heapModeBytes;
+
+    StorageFootprint(StorageMode storageMode, int entries, long offHeapBytes, long heapBytes, long heapModeBytes) {
+        this.storageMode = storageMode;
+        this.entries = entries;
+        this.offHeapBytes = offHeapBytes;
+        this.heapBytes = heapBytes;
+        this.heapModeBytes = heapModeBytes;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * @return number of merged properties
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return bytes held outside the heap
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * @return estimated heap bytes held for the properties, merged snapshot and parsed layers
+     */
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * @return estimated heap bytes the same properties take in heap mode
+     */
+    public long getHeapModeBytes() {
+        return heapModeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return storageMode + " storage of " + entries + " properties: " + heapBytes + " heap bytes, "
+                + offHeapBytes + " off-heap bytes (heap mode: " + heapModeBytes + " heap bytes)";
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2013 bitcup
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.bitcup.configurator;
+
+/**
+ * Where a {@link com.bitcup.configurator.FileConfig} keeps its merged properties.
+ * <p/>
+ * User: omar
+ */
+public enum StorageMode {
+
+    /**
+     * Java objects on the heap, in a {@link com.bitcup.configurator.PersistentMap}
+     * shared between versions.  The parsed layers are kept and shared with other
+     * instances via {@link com.bitcup.configurator.LayerCache}.
+     */
+    HEAP,
+
+    /**
+     * UTF-8 bytes in a direct buffer, see {@link com.bitcup.configurator.OffHeapStore}.
+     * The parsed layers are released once merged; their contents are kept off the
+     * heap as well, until they reload.
+     */
+    OFF_HEAP,
+
+    /**
+     * Like {@link #OFF_HEAP}, in a buffer mapped from a temporary file so that the
+     * operating system may page it out.
+     */
+    MAPPED
+}
@@ -3,7 +3,10 @@ package com.bitcup.configurator;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 /**
@@ -26,6 +29,30 @@ public abstract class BaseTest {
         return file;
     }
 
+    /**
+     * Rewrites the file and moves its modification time a second past the previous one,
+     * so the change is detected even on file systems with a coarse timestamp resolution.
+     */
+    protected File rewriteTestConfig(File file, String data) throws Exception {
+        final long lastModified = file.lastModified();
+        writeToTestConfig(file, false, data);
+        assertTrue(file.setLastModified(lastModified + 1000));
+        return file;
+    }
+
+    /**
+     * Polls the condition until it holds, failing once the timeout has elapsed.
+     */
+    protected void waitFor(Callable<Boolean> condition, long timeoutMillis) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.call()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("condition not met within " + timeoutMillis + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
     protected void deleteTestConfig(File file) throws Exception {
         if (file != null) {
             FileUtils.forceDelete(file);
@@ -0,0 +1,108 @@
+package com.bitcup.configurator;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class ClasspathIndexTest extends BaseTest {
+
+    private File lateLayer;
+    private File absoluteLayer;
+    private File loaderDir;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (File file : new File[]{lateLayer, absoluteLayer, loaderDir}) {
+            if (file != null && file.exists()) {
+                deleteTestConfig(file);
+            }
+        }
+    }
+
+    @Test(enabled = true)
+    public void testKnownMissingLayers() throws Exception {
+        FileConfig config = new FileConfig(new Context("noenv", "nohost", null), "project.properties");
+        assertEquals(123, (int) config.getInt("comp1.propInt"));
+
+        ClasspathIndex index = ClasspathIndex.getInstance();
+        assertTrue(index.isKnownMissing("nohost.project.properties"));
+        assertTrue(index.isKnownMissing("noenv.project.properties"));
+        assertFalse(index.isKnownMissing("project.properties"));
+        assertNotNull(index.locate("project.properties"));
+        assertNull(index.locate("nohost.project.properties"));
+    }
+
+    @Test(enabled = true)
+    public void testLayerAddedLater() throws Exception {
+        final File classpathDir = new File(getClass().getResource("/project.properties").toURI()).getParentFile();
+        lateLayer = new File(classpathDir, "latehost.project.properties");
+
+        // refresh delay of 0 re-probes missing layers as often as the index allows
+        final FileConfig config = new FileConfig(new Context(null, "latehost", null), "project.properties", 0);
+        assertEquals(123, (int) config.getInt("comp1.propInt"));
+        assertNull(config.layers.get(Layer.HOST));
+        assertTrue(ClasspathIndex.getInstance().isKnownMissing("latehost.project.properties"));
+
+        writeToTestConfig(lateLayer, false, "comp1.propInt=789");
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return config.getInt("comp1.propInt") == 789;
+            }
+        }, ClasspathIndex.MIN_REPROBE_INTERVAL_MILLIS + 2000);
+        assertEquals(Layer.HOST, config.getWinningLayer("comp1.propInt"));
+        assertFalse(ClasspathIndex.getInstance().isKnownMissing("latehost.project.properties"));
+        assertEquals(2, config.getCurrentVersion().getVersion());
+    }
+
+    @Test(enabled = true)
+    public void testAbsolutePath() throws Exception {
+        absoluteLayer = writeToTestConfig(createTestConfigFile("/temp/configurator/absolute.properties"), false,
+                "comp1.propInt=321");
+        // found outside the classpath, as new PropertiesConfiguration(filename) would
+        final FileConfig config = new FileConfig(new Context(null, null, null), absoluteLayer.getPath());
+        assertEquals(321, (int) config.getInt("comp1.propInt"));
+        assertNotNull(ClasspathIndex.getInstance().locate(absoluteLayer.getPath()));
+    }
+
+    @Test(enabled = true)
+    public void testContextClassLoaders() throws Exception {
+        // two applications of a container, only the first with the layer on its classpath
+        loaderDir = createTestConfigFile("/temp/configurator/loaders");
+        final File app1 = new File(loaderDir, "app1");
+        final File app2 = new File(loaderDir, "app2");
+        assertTrue(app2.mkdirs());
+        writeToTestConfig(new File(app1, "loader.properties"), false, "comp1.propInt=1");
+        final ClassLoader loader1 = new URLClassLoader(new URL[]{app1.toURI().toURL()}, null);
+        final ClassLoader loader2 = new URLClassLoader(new URL[]{app2.toURI().toURL()}, null);
+
+        final ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(loader1);
+            assertNotNull(ClasspathIndex.getInstance().locate("loader.properties"));
+            assertEquals(1, (int) new FileConfig(new Context(null, null, null), "loader.properties").getInt(
+                    "comp1.propInt"));
+
+            // the location found by the first application is not handed to the second
+            Thread.currentThread().setContextClassLoader(loader2);
+            assertNull(ClasspathIndex.getInstance().locate("loader.properties"));
+            assertTrue(ClasspathIndex.getInstance().isKnownMissing("loader.properties"));
+            assertNull(new FileConfig(new Context(null, null, null), "loader.properties").getString(
+                    "comp1.propInt"));
+
+            Thread.currentThread().setContextClassLoader(loader1);
+            assertFalse(ClasspathIndex.getInstance().isKnownMissing("loader.properties"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.Test;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.concurrent.Callable;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class ContextTest extends BaseTest {
+
+    @Test(enabled = true)
+    public void testInstances() throws Exception {
+        Context dev = new Context("dev", "", null);
+        assertEquals("dev", dev.getEnv());
+        assertFalse(dev.hasHostName());
+        assertFalse(dev.hasConfigPath());
+        assertNotSame(Context.getInstance(), dev);
+    }
+
+    @Test(enabled = true)
+    public void testSharedLayers() throws Exception {
+        FileConfig devLocalhost = new FileConfig(new Context("dev", "localhost", null), "project.properties", 7);
+        FileConfig devOther = new FileConfig(new Context("dev", "otherhost", null), "project.properties", 7);
+        FileConfig none = new FileConfig(new Context(null, null, null), "project.properties", 7);
+
+        // each context sees its own view
+        assertEquals("item3", devLocalhost.getString("comp2.propList"));
+        assertEquals("item1", devOther.getString("comp2.propList"));
+        assertEquals(456, (int) devOther.getInt("comp1.propInt"));
+        assertEquals(123, (int) none.getInt("comp1.propInt"));
+
+        // ...built from the same parsed env and base layers
+        assertSame(devLocalhost.layers.get(Layer.ENV), devOther.layers.get(Layer.ENV));
+        assertSame(devLocalhost.layers.get(Layer.BASE), devOther.layers.get(Layer.BASE));
+        assertSame(devLocalhost.layers.get(Layer.BASE), none.layers.get(Layer.BASE));
+        assertNull(devOther.layers.get(Layer.HOST));
+
+        // whatever the refresh delay
+        FileConfig slower = new FileConfig(new Context("dev", null, null), "project.properties", 8);
+        assertSame(devOther.layers.get(Layer.BASE), slower.layers.get(Layer.BASE));
+    }
+
+    @Test(enabled = true)
+    public void testUnusedLayersDropped() throws Exception {
+        final URL url = getClass().getResource("/testConfiguratorRegistry.properties");
+        final WeakReference<PropertiesConfiguration> layer =
+                new WeakReference<PropertiesConfiguration>(LayerCache.getInstance().getLayer(url));
+        assertTrue(LayerCache.getInstance().isCached(url));
+
+        // held by nothing but the cache
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                System.gc();
+                return layer.get() == null;
+            }
+        }, 5000);
+        assertFalse(LayerCache.getInstance().isCached(url));
+    }
+
+    @Test(enabled = true)
+    @SuppressWarnings("unchecked")
+    public void testOverridesStayInContext() throws Exception {
+        FileConfigProperties devProperties = new FileConfigProperties(new Context("dev", null, null),
+                "project.properties", 9);
+        FileConfigMap devMap = new FileConfigMap(new Context("dev", "localhost", null), "project.properties", 9);
+        FileConfig devOther = new FileConfig(new Context("dev", "otherhost", null), "project.properties", 9);
+
+        // overrides shadow the shared env and base layers of their own context only
+        devProperties.setProperty("comp1.propInt", "1");
+        devMap.getMap().put("comp1.sub.propBool", "false");
+        assertEquals("1", devProperties.getProperty("comp1.propInt"));
+        assertEquals(false, (boolean) devMap.getBoolean("comp1.sub.propBool"));
+        assertEquals(456, (int) devMap.getInt("comp1.propInt"));
+        assertEquals(456, (int) devOther.getInt("comp1.propInt"));
+        assertEquals(true, (boolean) devOther.getBoolean("comp1.sub.propBool"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.ConfigurationRuntimeException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class EncryptedValuesTest extends BaseTest {
+
+    private SecretKey key;
+    private File keyFile;
+    private File localConfigFile;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        key = EncryptedValues.generateKey(128);
+        keyFile = writeToTestConfig(createTestConfigFile("/temp/configurator/config.key"), false,
+                "# test key\n" + Base64.getEncoder().encodeToString(key.getEncoded()) + "\n");
+        localConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/secret.properties"), false,
+                "db.password=" + EncryptedValues.encrypt("s3cret", key) + "\ndb.user=app\n");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        deleteTestConfig(keyFile);
+        deleteTestConfig(localConfigFile);
+    }
+
+    @Test(enabled = true)
+    public void testRoundTrip() throws Exception {
+        final String encrypted = EncryptedValues.encrypt("value", key);
+        assertTrue(EncryptedValues.isEncrypted(encrypted));
+        assertFalse(encrypted.equals(EncryptedValues.encrypt("value", key)));
+        assertEquals("value", new String(EncryptedValues.decrypt(encrypted, key)));
+        try {
+            EncryptedValues.decrypt(encrypted, EncryptedValues.generateKey(128));
+            fail();
+        } catch (ConfigurationRuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test(enabled = true)
+    public void testDecryptOncePerValue() throws Exception {
+        FileConfig config = new FileConfig(new Context(null, null, localConfigFile.getParent()), "secret.properties", 0);
+        assertTrue(EncryptedValues.isEncrypted(config.getString("db.password")));
+
+        final KeyFileKeyProvider keyFileProvider = new KeyFileKeyProvider(keyFile);
+        final AtomicInteger decryptions = new AtomicInteger();
+        config.setKeyProvider(new KeyProvider() {
+            @Override
+            public SecretKey getKey() {
+                decryptions.incrementAndGet();
+                return keyFileProvider.getKey();
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            assertEquals("s3cret", config.getString("db.password"));
+        }
+        assertEquals("app", config.getString("db.user"));
+        assertEquals(1, decryptions.get());
+        assertEquals(1, config.decryptionCache.size());
+
+        // a reload leaving the value untouched keeps it cached
+        rewriteTestConfig(localConfigFile, "db.password=" + config.getCurrentVersion().getProperties().get("db.password") + "\ndb.user=other\n");
+        assertEquals("other", config.getString("db.user"));
+        assertEquals(1, config.decryptionCache.size());
+        assertEquals("s3cret", config.getString("db.password"));
+        assertEquals(1, decryptions.get());
+
+        // a changed value wipes the cached plaintext and is decrypted again
+        rewriteTestConfig(localConfigFile, "db.password=" + EncryptedValues.encrypt("changed", key) + "\n");
+        assertEquals(0, config.getInt("missing", 0).intValue());
+        assertEquals(0, config.decryptionCache.size());
+        assertEquals("changed", config.getString("db.password"));
+        assertEquals(2, decryptions.get());
+
+        // pinning the old version retires the new plaintext too
+        config.pin(2);
+        assertEquals(0, config.decryptionCache.size());
+        assertEquals("s3cret", config.getString("db.password"));
+
+        config.setKeyProvider(null);
+        assertEquals(0, config.decryptionCache.size());
+        assertTrue(EncryptedValues.isEncrypted(config.getString("db.password")));
+    }
+
+    @Test(enabled = true)
+    public void testRetiredVersionNotCached() throws Exception {
+        final FileConfigMap config = new FileConfigMap(new Context(null, null, localConfigFile.getParent()),
+                "secret.properties", 0);
+        config.setKeyProvider(new KeyFileKeyProvider(keyFile));
+        final String cipherText = (String) config.getCurrentVersion().getProperties().get("db.password");
+        // the map decrypts like the String getters
+        assertEquals("s3cret", config.getMap().get("db.password"));
+        assertEquals(1, config.decryptionCache.size());
+
+        rewriteTestConfig(localConfigFile, "db.user=app\n");
+        assertFalse(config.getConfiguration().containsKey("db.password"));
+        assertEquals(0, config.decryptionCache.size());
+
+        // a reader still holding the retired version decrypts, but its plaintext is not kept
+        assertEquals("s3cret", config.decryptionCache.get("db.password", cipherText, new KeyFileKeyProvider(keyFile)));
+        assertEquals(0, config.decryptionCache.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.Configuration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class FileConfigBundleTest extends BaseTest {
+
+    private File dbConfigFile;
+    private File cacheConfigFile;
+    private FileConfigBundle bundle;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dbConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/db.properties"), false,
+                "url=jdbc:h2:mem\npool.size=5\n");
+        cacheConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/cache.properties"), false,
+                "ttl=60\n");
+        // refresh delay of 0 checks the files on every read
+        bundle = new FileConfigBundle(new Context(null, null, dbConfigFile.getParent()),
+                Arrays.asList("project.properties", "db.properties", "cache.properties"), 0);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        deleteTestConfig(dbConfigFile);
+        deleteTestConfig(cacheConfigFile);
+    }
+
+    @Test(enabled = true)
+    public void testNamespaces() throws Exception {
+        assertEquals(Arrays.asList("project", "db", "cache"), new ArrayList<String>(bundle.getNamespaces()));
+        assertEquals(123, (int) bundle.getInt("project.comp1.propInt"));
+        assertEquals(2, bundle.getList("project.comp2.propList").size());
+        assertEquals("jdbc:h2:mem", bundle.getString("db.url"));
+        assertEquals(60, (long) bundle.getLong("cache.ttl"));
+        assertNull(bundle.getString("url"));
+
+        final Configuration db = bundle.getConfiguration("db");
+        assertEquals(5, db.getInt("pool.size"));
+        assertFalse(db.containsKey("ttl"));
+        assertEquals(1, bundle.getCurrentVersion().getVersion());
+    }
+
+    @Test(enabled = true)
+    public void testAtomicUpdate() throws Exception {
+        final Configuration before = bundle.getConfiguration();
+
+        rewriteTestConfig(dbConfigFile, "url=jdbc:h2:file\npool.size=5\n");
+        rewriteTestConfig(cacheConfigFile, "ttl=120\n");
+
+        // both changes are found by the same check and published together
+        final Configuration after = bundle.getConfiguration();
+        assertEquals(2, bundle.getCurrentVersion().getVersion());
+        assertEquals("jdbc:h2:file", after.getString("db.url"));
+        assertEquals(120, after.getInt("cache.ttl"));
+
+        // earlier snapshots stay consistent
+        assertEquals("jdbc:h2:mem", before.getString("db.url"));
+        assertEquals(60, before.getInt("cache.ttl"));
+
+        // unchanged files are shared between versions
+        assertSame(before.getProperty("project.comp1.propInt"), after.getProperty("project.comp1.propInt"));
+
+        // a check finding no changes publishes nothing
+        assertEquals(120, (int) bundle.getInt("cache.ttl"));
+        assertEquals(2, bundle.getCurrentVersion().getVersion());
+    }
+
+    @Test(enabled = true)
+    public void testRemovedProperty() throws Exception {
+        rewriteTestConfig(dbConfigFile, "url=jdbc:h2:mem\n");
+        assertFalse(bundle.getConfiguration().containsKey("db.pool.size"));
+        assertEquals("jdbc:h2:mem", bundle.getString("db.url"));
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalArgumentException.class)
+    public void testSameNamespace() throws Exception {
+        new FileConfigBundle(new Context(null, null, dbConfigFile.getParent()),
+                Arrays.asList("db.properties", "db.conf"), 0);
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalArgumentException.class)
+    public void testNestedNamespace() throws Exception {
+        // 'pool.size' of db.properties and 'size' of db.pool.properties would both read as 'db.pool.size'
+        new FileConfigBundle(new Context(null, null, dbConfigFile.getParent()),
+                Arrays.asList("db.pool.properties", "db.properties"), 0);
+    }
+}
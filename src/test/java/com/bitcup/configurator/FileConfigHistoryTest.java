@@ -0,0 +1,108 @@
+package com.bitcup.configurator;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class FileConfigHistoryTest extends BaseTest {
+
+    private File localConfigFile;
+    private FileConfig config;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        final File testConfigFile = createTestConfigFile("/temp/configurator/history.properties");
+        localConfigFile = writeToTestConfig(testConfigFile, false, "comp1.propInt=0\ncomp1.propStr=a\n");
+        // refresh delay of 0 checks the file on every read
+        config = new FileConfig(new Context(null, null, localConfigFile.getParent()), "history.properties", 0);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        deleteTestConfig(localConfigFile);
+    }
+
+    @Test(enabled = true)
+    public void testVersions() throws Exception {
+        assertEquals(1, config.getVersions().size());
+        final ConfigVersion v1 = config.getCurrentVersion();
+        assertEquals(1, v1.getVersion());
+        assertTrue(v1.getFingerprints().get(Layer.LOCAL).contains("history.properties@"));
+
+        rewriteTestConfig(localConfigFile, "comp1.propInt=1\ncomp1.propStr=a\ncomp1.propNew=x\n");
+        assertEquals(1, (int) config.getInt("comp1.propInt"));
+        final ConfigVersion v2 = config.getCurrentVersion();
+        assertEquals(2, v2.getVersion());
+        assertFalse(v1.getFingerprints().equals(v2.getFingerprints()));
+
+        // unchanged properties are shared between versions
+        assertSame(v1.getProperties().get("comp1.propStr"), v2.getProperties().get("comp1.propStr"));
+
+        ConfigDiff diff = config.diff(1, 2);
+        assertEquals("x", diff.getAdded().get("comp1.propNew"));
+        assertTrue(diff.getRemoved().isEmpty());
+        assertEquals("0", diff.getChanged().get("comp1.propInt").getOldValue());
+        assertEquals("1", diff.getChanged().get("comp1.propInt").getNewValue());
+        assertEquals(1, diff.getChanged().size());
+        assertTrue(config.diff(2, 2).isEmpty());
+    }
+
+    @Test(enabled = true)
+    public void testPinAndRollback() throws Exception {
+        rewriteTestConfig(localConfigFile, "comp1.propInt=1\n");
+        assertEquals(1, (int) config.getInt("comp1.propInt"));
+        assertFalse(config.isPinned());
+
+        config.rollback();
+        assertTrue(config.isPinned());
+        assertEquals(0, (int) config.getInt("comp1.propInt"));
+        assertEquals("a", config.getString("comp1.propStr"));
+        assertEquals(2, config.getLatestVersion().getVersion());
+
+        config.unpin();
+        assertEquals(1, (int) config.getInt("comp1.propInt"));
+
+        // a reload unpins
+        config.pin(1);
+        assertEquals(0, (int) config.getInt("comp1.propInt"));
+        rewriteTestConfig(localConfigFile, "comp1.propInt=2\n");
+        assertEquals(2, (int) config.getInt("comp1.propInt"));
+        assertFalse(config.isPinned());
+        assertEquals(3, config.getCurrentVersion().getVersion());
+
+        try {
+            config.pin(42);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(enabled = true)
+    public void testBoundedHistory() throws Exception {
+        config.setHistorySize(3);
+        for (int i = 1; i <= 5; i++) {
+            rewriteTestConfig(localConfigFile, "comp1.propInt=" + i + "\n");
+            assertEquals(i, (int) config.getInt("comp1.propInt"));
+        }
+        final List<ConfigVersion> versions = config.getVersions();
+        assertEquals(3, versions.size());
+        assertEquals(4, versions.get(0).getVersion());
+        assertEquals(6, versions.get(2).getVersion());
+        assertTrue(versions.get(0).getTimestamp() <= versions.get(2).getTimestamp());
+        try {
+            config.diff(1, 6);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
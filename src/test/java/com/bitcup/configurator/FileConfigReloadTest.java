@@ -7,7 +7,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
@@ -40,21 +42,26 @@ public class FileConfigReloadTest extends BaseTest {
         // configPath context
         Context.getInstance().configPath = localConfigFile.getParent();
 
-        // load config
-        FileConfig config = new FileConfig("reload.properties");
+        // load config, on a clock moved by hand rather than waiting for the default refresh delay
+        final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        final FileConfig config = new FileConfig("reload.properties") {
+            @Override
+            long currentTimeMillis() {
+                return now.get();
+            }
+        };
         assertNotNull(config);
 
         // initial value
         assertEquals(0, (int) config.getInt("comp1.propInt"));
 
-        // this is needed to make the test work!
-        Thread.sleep(TimeUnit.SECONDS.toMillis(1));
-
-        // change value and wait until config file in reloaded
-        localConfigFile = writeToTestConfig(localConfigFile, false, "comp1.propInt=100");
-        logger.info("waiting " + FileConfig.DEFAULT_REFRESH_DELAY_IN_SECONDS + " secs while config is refreshed...");
-        Thread.sleep(TimeUnit.SECONDS.toMillis(FileConfig.DEFAULT_REFRESH_DELAY_IN_SECONDS + 1));
+        // change value: not picked up before the default refresh delay elapses...
+        rewriteTestConfig(localConfigFile, "comp1.propInt=100");
+        now.addAndGet(TimeUnit.SECONDS.toMillis(FileConfig.DEFAULT_REFRESH_DELAY_IN_SECONDS) - 1);
+        assertEquals(0, (int) config.getInt("comp1.propInt"));
 
+        // ...and picked up as soon as it has
+        now.incrementAndGet();
         assertEquals(100, (int) config.getInt("comp1.propInt"));
     }
 
@@ -64,19 +71,23 @@ public class FileConfigReloadTest extends BaseTest {
         Context.getInstance().configPath = localConfigFile.getParent();
 
         // load config
-        FileConfig config = new FileConfig("reload.properties", 5);
+        final FileConfig config = new FileConfig("reload.properties", 1);
         assertNotNull(config);
 
         // initial value
         assertEquals(0, (int) config.getInt("comp1.propInt"));
 
-        // this is needed to make the test work!
-        Thread.sleep(TimeUnit.SECONDS.toMillis(1));
-
         // change value and wait until config file in reloaded
-        localConfigFile = writeToTestConfig(localConfigFile, false, "comp1.propInt=100");
-        logger.info("waiting " + 5 + " secs while config is refreshed...");
-        Thread.sleep(TimeUnit.SECONDS.toMillis(5 + 1));
+        rewriteTestConfig(localConfigFile, "comp1.propInt=100");
+        final long start = System.nanoTime();
+        logger.info("waiting up to 1 sec while config is refreshed...");
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return config.getInt("comp1.propInt") == 100;
+            }
+        }, TimeUnit.SECONDS.toMillis(1 + 2));
+        logger.info("reloaded after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
 
         assertEquals(100, (int) config.getInt("comp1.propInt"));
     }
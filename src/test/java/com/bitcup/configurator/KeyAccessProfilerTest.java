@@ -0,0 +1,92 @@
+package com.bitcup.configurator;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class KeyAccessProfilerTest {
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Context.getInstance().env = null;
+        Context.getInstance().hostName = null;
+        Context.getInstance().configPath = null;
+    }
+
+    @Test(enabled = true)
+    public void testDisabledByDefault() throws Exception {
+        FileConfig config = new FileConfig("project.properties");
+        assertEquals(123, (int) config.getInt("comp1.propInt"));
+        assertNull(config.getAccessProfiler());
+        assertNull(config.getAccessReport(10));
+    }
+
+    @Test(enabled = true)
+    public void testReport() throws Exception {
+        // localhost and dev context
+        Context.getInstance().hostName = "localhost";
+        Context.getInstance().env = "dev";
+
+        FileConfig config = new FileConfig("project.properties");
+        config.enableAccessProfiling(1);
+        for (int i = 0; i < 3; i++) {
+            config.getInt("comp1.propInt");
+        }
+        config.getList("comp2.propList");
+        config.getString("propX", "x");
+
+        KeyAccessReport report = config.getAccessReport(1);
+        assertEquals(1, report.getHotKeys().size());
+        assertEquals(3L, (long) report.getHotKeys().get("comp1.propInt"));
+        assertEquals(3L, (long) report.getReadsByLayer().get(Layer.ENV));
+        assertEquals(1L, (long) report.getReadsByLayer().get(Layer.HOST));
+        assertNull(report.getReadsByLayer().get(Layer.BASE));
+        assertEquals(new HashSet<String>(Arrays.asList("comp1.sub.propBool")), report.getNeverReadKeys());
+        assertEquals(Layer.ENV, report.getShadowedKeys().get("comp1.propInt"));
+        assertEquals(Layer.HOST, report.getShadowedKeys().get("comp2.propList"));
+        assertEquals(2, report.getShadowedKeys().size());
+        assertEquals(1L, (long) report.getMissingKeys().get("propX"));
+    }
+
+    @Test(enabled = true)
+    public void testServedVersion() throws Exception {
+        final FileConfig config = new FileConfig(new Context("dev", "localhost", null), "project.properties", 9);
+        config.enableAccessProfiling(1);
+        assertEquals(Layer.ENV, config.getWinningLayer("comp1.propInt"));
+
+        // a value set programmatically is served by no layer...
+        config.setProperty("comp1.propInt", "1");
+        assertNull(config.getWinningLayer("comp1.propInt"));
+        config.getInt("comp1.propInt");
+        // ...while a pinned version is served by the layers it was merged from
+        config.pin(1);
+        config.getInt("comp1.propInt");
+
+        final KeyAccessReport report = config.getAccessReport(1);
+        assertEquals(1L, (long) report.getOverriddenKeys().get("comp1.propInt"));
+        assertEquals(1L, (long) report.getReadsByLayer().get(Layer.ENV));
+        assertTrue(report.getMissingKeys().isEmpty());
+    }
+
+    @Test(enabled = true)
+    public void testSampling() throws Exception {
+        FileConfig config = new FileConfig("project.properties");
+        KeyAccessProfiler profiler = config.enableAccessProfiling(10);
+        for (int i = 0; i < 10000; i++) {
+            config.getBoolean("comp1.sub.propBool");
+        }
+        long reads = config.getAccessReport(1).getHotKeys().get("comp1.sub.propBool");
+        assertEquals(0, reads % profiler.getSampleRate());
+        assertTrue("estimated reads " + reads, reads > 5000 && reads < 15000);
+
+        config.disableAccessProfiling();
+        assertNull(config.getAccessReport(1));
+    }
+}
@@ -0,0 +1,134 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class LayerAnalyzerTest extends BaseTest {
+
+    private File localConfigFile;
+    private File registryFile;
+    private File outFile;
+    private Context context;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        // same values as the dev and localhost layers on the classpath
+        localConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/project.properties"), false,
+                "comp1.propInt=456\ncomp2.propList=item3\nlocal.host=example\nlocal.url=http://${local.host}:8080\n"
+                        + "local.escaped=a\\,b\n");
+        registryFile = createTestConfigFile("/temp/configurator/registry.properties");
+        outFile = createTestConfigFile("/temp/configurator/flattened.properties");
+        context = new Context("dev", "localhost", localConfigFile.getParent());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (File file : Arrays.asList(localConfigFile, registryFile, outFile)) {
+            if (file.exists()) {
+                deleteTestConfig(file);
+            }
+        }
+    }
+
+    @Test(enabled = true)
+    public void testAnalyze() throws Exception {
+        final LayerAnalysis analysis = new LayerAnalyzer(context, "project.properties").analyze();
+        assertEquals(EnumSet.allOf(Layer.class), analysis.getLayers().keySet());
+        assertEquals(localConfigFile.getPath(), analysis.getLayers().get(Layer.LOCAL));
+
+        assertEquals(2, analysis.getShadowedKeys().size());
+        assertEquals(Layer.LOCAL, analysis.getShadowedKeys().get("comp1.propInt"));
+        assertEquals(Layer.LOCAL, analysis.getShadowedKeys().get("comp2.propList"));
+
+        // the local values repeat the ones they override...
+        assertEquals(EnumSet.of(Layer.LOCAL), analysis.getRedundantOverrides().get("comp1.propInt"));
+        assertEquals(EnumSet.of(Layer.LOCAL), analysis.getRedundantOverrides().get("comp2.propList"));
+        // ...which are never served in this context
+        assertEquals(EnumSet.of(Layer.ENV), analysis.getDeadOverrides().get("comp1.propInt"));
+        assertEquals(EnumSet.of(Layer.HOST), analysis.getDeadOverrides().get("comp2.propList"));
+
+        // without the local layer, the env and host overrides are in effect
+        final LayerAnalysis classpath = new LayerAnalyzer(new Context("dev", "localhost", null),
+                "project.properties").analyze();
+        assertEquals(Layer.ENV, classpath.getShadowedKeys().get("comp1.propInt"));
+        assertTrue(classpath.getRedundantOverrides().isEmpty());
+        assertTrue(classpath.getDeadOverrides().isEmpty());
+    }
+
+    @Test(enabled = true)
+    public void testFlatten() throws Exception {
+        new LayerAnalyzer(context, "project.properties").flatten().save(outFile);
+        final PropertiesConfiguration flat = new PropertiesConfiguration(outFile);
+        assertEquals("http://example:8080", flat.getString("local.url"));
+        assertEquals("a,b", flat.getString("local.escaped"));
+        assertEquals(1, flat.getList("local.escaped").size());
+
+        // a single flattened file serves the same values as the layers
+        final FileConfig config = new FileConfig(context, "project.properties", 0);
+        final Iterator<String> keys = config.getConfiguration().getKeys();
+        int count = 0;
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            assertEquals(key, config.getList(key), flat.getList(key));
+            count++;
+        }
+        final Iterator<String> flatKeys = flat.getKeys();
+        while (flatKeys.hasNext()) {
+            flatKeys.next();
+            count--;
+        }
+        assertEquals(0, count);
+    }
+
+    @Test(enabled = true)
+    public void testReadRegistry() throws Exception {
+        final Map<String, Context> hosts = LayerAnalyzer.readRegistry(
+                new PropertiesConfiguration("testConfiguratorRegistry.properties"), "prod");
+        assertEquals(Arrays.asList("server-1", "server-2"), Arrays.asList(hosts.keySet().toArray()));
+        assertEquals("/tmp/conf", hosts.get("server-1").getConfigPath());
+        assertEquals("server-1", hosts.get("server-1").getHostName());
+        assertEquals("prod", hosts.get("server-2").getEnv());
+        assertFalse(hosts.get("server-2").hasConfigPath());
+    }
+
+    @Test(enabled = true)
+    public void testFlattenFleet() throws Exception {
+        writeToTestConfig(registryFile, false, "server-1.type=app\nserver-1.configPath="
+                + localConfigFile.getParent() + "\nserver-2.type=batch\nserver-2.env=dev\nserver-3.type=batch\n");
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertEquals(0, LayerAnalyzer.run(new String[]{"-registry", registryFile.getPath(), "-out", outFile.getPath(),
+                "project.properties"}, new PrintStream(report), System.err));
+        assertTrue(report.toString().contains("redundant overrides"));
+
+        final PropertiesConfiguration fleet = new PropertiesConfiguration(outFile);
+        assertEquals(456, fleet.getInt("server-1.comp1.propInt"));
+        assertEquals("http://example:8080", fleet.getString("server-1.local.url"));
+        assertEquals(456, fleet.getInt("server-2.comp1.propInt"));
+        assertEquals(123, fleet.getInt("server-3.comp1.propInt"));
+        assertEquals(Arrays.<Object>asList("item1", "item2"), fleet.getList("server-3.comp2.propList"));
+        assertFalse(fleet.containsKey("server-3.local.url"));
+    }
+
+    @Test(enabled = true)
+    public void testUsage() throws Exception {
+        final PrintStream devNull = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(2, LayerAnalyzer.run(new String[0], devNull, devNull));
+        assertEquals(2, LayerAnalyzer.run(new String[]{"-bogus", "x", "project.properties"}, devNull, devNull));
+        assertEquals(1, LayerAnalyzer.run(new String[]{"missing.properties"}, devNull, devNull));
+    }
+}
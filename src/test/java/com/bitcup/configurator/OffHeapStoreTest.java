@@ -0,0 +1,157 @@
+package com.bitcup.configurator;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class OffHeapStoreTest extends BaseTest {
+
+    private File localConfigFile;
+    private File baseLayerFile;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (File file : new File[]{localConfigFile, baseLayerFile}) {
+            if (file != null && file.exists()) {
+                deleteTestConfig(file);
+            }
+        }
+        localConfigFile = null;
+        baseLayerFile = null;
+    }
+
+    private Map<String, Object> properties(int n) {
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        for (int i = 0; i < n; i++) {
+            if (i % 5 == 0) {
+                properties.put("tenant." + i + ".hosts",
+                        Collections.unmodifiableList(Arrays.<Object>asList("h" + i, "", "\u00e9\u4e2d" + i)));
+            } else {
+                properties.put("tenant." + i + ".route", "backend-" + (i % 17));
+            }
+        }
+        properties.put("", "empty key");
+        return properties;
+    }
+
+    @Test(enabled = true)
+    public void testDirectStore() throws Exception {
+        final Map<String, Object> properties = properties(10000);
+        final OffHeapStore store = OffHeapStore.build(properties, false);
+        assertFalse(store.isMapped());
+        assertEquals(properties.size(), store.size());
+        assertEquals(properties, store);
+        assertEquals(store, properties);
+        assertEquals("backend-1", store.get("tenant.1.route"));
+        assertEquals(Arrays.asList("h5", "", "\u00e9\u4e2d5"), store.get("tenant.5.hosts"));
+        assertEquals("empty key", store.get(""));
+        assertNull(store.get("tenant.5.route"));
+        assertFalse(store.containsKey("missing"));
+        assertTrue(store.getOffHeapBytes() < OffHeapStore.estimateHeapBytes(properties));
+    }
+
+    @Test(enabled = true)
+    public void testMappedStore() throws Exception {
+        final Map<String, Object> properties = properties(1000);
+        final OffHeapStore store = OffHeapStore.build(properties, true);
+        assertTrue(store.isMapped());
+        assertEquals(properties, store);
+        assertTrue(OffHeapStore.build(new HashMap<String, Object>(), true).isEmpty());
+    }
+
+    @Test(enabled = true)
+    public void testOffHeapFileConfig() throws Exception {
+        final Context context = new Context("dev", "localhost", null);
+        final FileConfig heap = new FileConfig(context, "project.properties", 0);
+        final FileConfig offHeap = new FileConfig(context, "project.properties", 0, StorageMode.OFF_HEAP);
+        assertEquals(heap.getCurrentVersion().getProperties(), offHeap.getCurrentVersion().getProperties());
+        assertEquals(456, (int) offHeap.getInt("comp1.propInt"));
+        assertEquals(Arrays.asList("item3"), offHeap.getList("comp2.propList"));
+        assertTrue(offHeap.getBoolean("comp1.sub.propBool"));
+
+        // layers are parsed privately and released once merged
+        assertNotSame(heap.layers.get(Layer.BASE), offHeap.layers.get(Layer.BASE));
+        assertTrue(offHeap.layers.get(Layer.BASE).isEmpty());
+
+        final StorageFootprint footprint = offHeap.getStorageFootprint();
+        assertEquals(StorageMode.OFF_HEAP, footprint.getStorageMode());
+        assertEquals(3, footprint.getEntries());
+        assertTrue(footprint.getOffHeapBytes() > 0);
+        assertEquals(0, footprint.getHeapBytes());
+        assertEquals(heap.getStorageFootprint().getHeapBytes(), footprint.getHeapModeBytes());
+    }
+
+    @Test(enabled = true)
+    public void testOffHeapReload() throws Exception {
+        localConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/offheap.properties"),
+                false, "comp1.propInt=0\n");
+        final FileConfig config = new FileConfig(new Context(null, null, localConfigFile.getParent()),
+                "offheap.properties", 0, StorageMode.MAPPED);
+        assertEquals(0, (int) config.getInt("comp1.propInt"));
+        // each version kept is a full store
+        config.setHistorySize(2);
+
+        rewriteTestConfig(localConfigFile, "comp1.propInt=1\ncomp1.propNew=x\n");
+        assertEquals(1, (int) config.getInt("comp1.propInt"));
+        assertEquals("x", config.getString("comp1.propNew"));
+        assertEquals(2, config.getCurrentVersion().getVersion());
+
+        final ConfigDiff diff = config.diff(1, 2);
+        assertEquals("x", diff.getAdded().get("comp1.propNew"));
+        assertEquals("1", diff.getChanged().get("comp1.propInt").getNewValue());
+
+        config.rollback();
+        assertEquals(0, (int) config.getInt("comp1.propInt"));
+    }
+
+    @Test(enabled = true)
+    public void testOffHeapHistory() throws Exception {
+        localConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/offheap.properties"),
+                false, "comp1.propInt=0\n");
+        final FileConfig config = new FileConfig(new Context(null, null, localConfigFile.getParent()),
+                "offheap.properties", 0, StorageMode.OFF_HEAP);
+        rewriteTestConfig(localConfigFile, "comp1.propInt=1\n");
+        assertEquals(1, (int) config.getInt("comp1.propInt"));
+        // only the version served is kept by default
+        assertEquals(1, config.getVersions().size());
+        assertEquals(2, config.getVersions().get(0).getVersion());
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void testOffHeapProfiling() throws Exception {
+        new FileConfig(new Context("dev", "localhost", null), "project.properties", 0, StorageMode.OFF_HEAP)
+                .enableAccessProfiling(1);
+    }
+
+    @Test(enabled = true)
+    public void testOffHeapLayerDeleted() throws Exception {
+        final File classpathDir = new File(getClass().getResource("/project.properties").toURI()).getParentFile();
+        baseLayerFile = writeToTestConfig(new File(classpathDir, "offheapdeleted.properties"), false, "b=1\n");
+        localConfigFile = writeToTestConfig(createTestConfigFile("/temp/configurator/offheapdeleted.properties"),
+                false, "l=1\n");
+        final Context context = new Context(null, null, localConfigFile.getParent());
+        final FileConfig heap = new FileConfig(context, "offheapdeleted.properties", 0);
+        final FileConfig offHeap = new FileConfig(context, "offheapdeleted.properties", 0, StorageMode.OFF_HEAP);
+
+        // a released layer whose file is gone keeps its last contents, as in heap mode...
+        deleteTestConfig(localConfigFile);
+        for (int b = 2; b <= 3; b++) {
+            rewriteTestConfig(baseLayerFile, "b=" + b + "\n");
+            for (FileConfig config : Arrays.asList(heap, offHeap)) {
+                assertEquals(b, (int) config.getInt("b"));
+                assertEquals(1, (int) config.getInt("l"));
+            }
+        }
+        // ...without blocking the changes of the other layers
+        assertEquals(3, offHeap.getCurrentVersion().getVersion());
+        assertTrue(offHeap.getStorageFootprint().getOffHeapBytes()
+                > ((OffHeapStore) offHeap.getCurrentVersion().getProperties()).getOffHeapBytes());
+    }
+}
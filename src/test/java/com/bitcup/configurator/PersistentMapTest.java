@@ -0,0 +1,148 @@
+package com.bitcup.configurator;
+
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * User: omar
+ */
+public class PersistentMapTest {
+
+    @Test(enabled = true)
+    public void testAgainstHashMap() throws Exception {
+        final Random random = new Random(42);
+        final Map<Object, Integer> expected = new HashMap<Object, Integer>();
+        PersistentMap<Object, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            final Object key = randomKey(random);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                final int value = random.nextInt(10);
+                expected.put(key, value);
+                map = map.plus(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(expected.size(), new HashMap<Object, Integer>(map).size());
+        for (Object key : expected.keySet()) {
+            assertTrue(map.containsKey(key));
+        }
+        assertNull(map.get("missing"));
+    }
+
+    @Test(enabled = true)
+    public void testImmutability() throws Exception {
+        final PersistentMap<String, String> v1 = PersistentMap.<String, String>empty().plus("a", "1").plus("b", "2");
+        final PersistentMap<String, String> v2 = v1.plus("a", "3").minus("b");
+        assertEquals("1", v1.get("a"));
+        assertEquals("2", v1.get("b"));
+        assertEquals("3", v2.get("a"));
+        assertFalse(v2.containsKey("b"));
+        assertSame(v1, v1.plus("a", "1"));
+        assertSame(v1, v1.minus("c"));
+        try {
+            v1.put("c", "4");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test(enabled = true)
+    public void testDiff() throws Exception {
+        final Random random = new Random(7);
+        final Map<Object, Integer> base = new HashMap<Object, Integer>();
+        for (int i = 0; i < 5000; i++) {
+            base.put(randomKey(random), random.nextInt(10));
+        }
+        final PersistentMap<Object, Integer> older = PersistentMap.copyOf(base);
+        PersistentMap<Object, Integer> newer = older;
+        final Map<Object, Integer> expected = new HashMap<Object, Integer>(base);
+        for (int i = 0; i < 300; i++) {
+            final Object key = randomKey(random);
+            if (random.nextBoolean()) {
+                newer = newer.minus(key);
+                expected.remove(key);
+            } else {
+                newer = newer.plus(key, 10 + i);
+                expected.put(key, 10 + i);
+            }
+        }
+
+        final Map<Object, Integer> applied = new HashMap<Object, Integer>(base);
+        final int[] visits = new int[1];
+        older.diff(newer, new PersistentMap.DiffVisitor<Object, Integer>() {
+            @Override
+            public void added(Object key, Integer value) {
+                assertNull(applied.put(key, value));
+                visits[0]++;
+            }
+
+            @Override
+            public void removed(Object key, Integer value) {
+                assertEquals(value, applied.remove(key));
+                visits[0]++;
+            }
+
+            @Override
+            public void changed(Object key, Integer oldValue, Integer newValue) {
+                assertEquals(oldValue, applied.put(key, newValue));
+                visits[0]++;
+            }
+        });
+        assertEquals(expected, applied);
+        assertTrue(visits[0] <= 300);
+
+        // maps built independently diff the same way
+        final Map<Object, Integer> rebuilt = new HashMap<Object, Integer>(base);
+        PersistentMap.copyOf(base).diff(PersistentMap.copyOf(expected), new PersistentMap.DiffVisitor<Object, Integer>() {
+            @Override
+            public void added(Object key, Integer value) {
+                rebuilt.put(key, value);
+            }
+
+            @Override
+            public void removed(Object key, Integer value) {
+                rebuilt.remove(key);
+            }
+
+            @Override
+            public void changed(Object key, Integer oldValue, Integer newValue) {
+                rebuilt.put(key, newValue);
+            }
+        });
+        assertEquals(expected, rebuilt);
+    }
+
+    /**
+     * Mixes strings with keys whose hashes collide.
+     */
+    private Object randomKey(Random random) {
+        final int n = random.nextInt(8000);
+        return n % 10 == 0 ? new CollidingKey(n) : "key." + n;
+    }
+
+    private static class CollidingKey {
+        private final int id;
+
+        CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 3;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes for a change written to a layer file to be seen by
+ * readers of a {@link com.bitcup.configurator.FileConfig}.
+ * <p/>
+ * Reader threads spin on the key while a writer rewrites the layer file with a new
+ * value per generation; each reader records the time from just before the write
+ * until it first reads the new value.
+ * <p/>
+ * User: omar
+ */
+class ReloadLatencyHarness {
+
+    private final FileConfig config;
+    private final File layerFile;
+    private final String key;
+    private final int readers;
+
+    private volatile Generation current;
+    private volatile boolean running;
+
+    ReloadLatencyHarness(FileConfig config, File layerFile, String key, int readers) {
+        this.config = config;
+        this.layerFile = layerFile;
+        this.key = key;
+        this.readers = readers;
+    }
+
+    /**
+     * Writes the given number of changes, waiting for every reader to see each one.
+     *
+     * @param changes       number of generations to write
+     * @param timeoutMillis how long all readers may take to see a single change
+     * @return latencies of all readers over all changes
+     * @throws IllegalStateException if a change was not seen in time
+     */
+    Result run(int changes, long timeoutMillis) throws Exception {
+        final List<Thread> threads = new ArrayList<Thread>();
+        final long[] latencies = new long[changes * readers];
+        running = true;
+        for (int r = 0; r < readers; r++) {
+            final Thread thread = new Thread(new Reader(r), "latency-reader-" + r);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (int i = 1; i <= changes; i++) {
+                final Generation generation = new Generation(i, "v" + i, readers);
+                final long lastModified = layerFile.lastModified();
+                current = generation;
+                generation.writtenAt = System.nanoTime();
+                FileUtils.write(layerFile, key + "=" + generation.value + "\n", false);
+                // a second past the previous write, whatever the file system's timestamp resolution
+                layerFile.setLastModified(lastModified + 1000);
+                if (!generation.seen.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException("change " + i + " to " + layerFile.getName()
+                            + " not seen by all readers within " + timeoutMillis + " ms");
+                }
+                System.arraycopy(generation.latencies, 0, latencies, (i - 1) * readers, readers);
+            }
+        } finally {
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        return new Result(latencies);
+    }
+
+    private static class Generation {
+        private final int number;
+        private final String value;
+        private final long[] latencies;
+        private final CountDownLatch seen;
+        private volatile long writtenAt;
+
+        private Generation(int number, String value, int readers) {
+            this.number = number;
+            this.value = value;
+            this.latencies = new long[readers];
+            this.seen = new CountDownLatch(readers);
+        }
+    }
+
+    private class Reader implements Runnable {
+        private final int index;
+        private int lastSeen;
+
+        private Reader(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                final Generation generation = current;
+                if (generation != null && generation.number > lastSeen
+                        && generation.value.equals(config.getString(key))) {
+                    generation.latencies[index] = System.nanoTime() - generation.writtenAt;
+                    lastSeen = generation.number;
+                    generation.seen.countDown();
+                }
+                // let the writer and the other readers run on small machines
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Latencies of one run, in nanoseconds.
+     */
+    static class Result {
+        private final long[] latencies;
+
+        private Result(long[] latencies) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+        }
+
+        int getSamples() {
+            return latencies.length;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the latency below which the given percentage of samples fall
+         */
+        long getPercentile(double percentile) {
+            final int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+            return latencies[Math.max(0, Math.min(latencies.length, rank) - 1)];
+        }
+
+        long getMax() {
+            return latencies[latencies.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "samples=" + getSamples()
+                    + ", p50=" + micros(getPercentile(50))
+                    + ", p90=" + micros(getPercentile(90))
+                    + ", p99=" + micros(getPercentile(99))
+                    + ", max=" + micros(getMax());
+        }
+
+        private static String micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.bitcup.configurator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * Reports how long a change to each kind of layer takes to reach concurrent readers,
+ * both when layers are checked on every read (refresh delay of 0) and when they are
+ * polled once per refresh delay.
+ * <p/>
+ * User: omar
+ */
+public class ReloadLatencyTest extends BaseTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReloadLatencyTest.class);
+
+    private static final String KEY = "latency.key";
+    private static final int READERS = 4;
+
+    private final List<File> files = new ArrayList<File>();
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (File file : files) {
+            if (file.exists()) {
+                deleteTestConfig(file);
+            }
+        }
+        files.clear();
+    }
+
+    @Test(enabled = true)
+    public void testLocalLayerLatency() throws Exception {
+        measure(Layer.LOCAL);
+    }
+
+    @Test(enabled = true)
+    public void testHostLayerLatency() throws Exception {
+        measure(Layer.HOST);
+    }
+
+    @Test(enabled = true)
+    public void testEnvLayerLatency() throws Exception {
+        measure(Layer.ENV);
+    }
+
+    @Test(enabled = true)
+    public void testBaseLayerLatency() throws Exception {
+        measure(Layer.BASE);
+    }
+
+    private void measure(Layer layer) throws Exception {
+        // every read checks the layers
+        report(layer, 0, 20);
+        // layers polled once a second
+        report(layer, 1, 2);
+    }
+
+    private void report(Layer layer, int refreshDelaySecs, int changes) throws Exception {
+        final String filename = "latency-" + layer.name().toLowerCase() + "-" + refreshDelaySecs + ".properties";
+        final File classpathDir = new File(getClass().getResource("/project.properties").toURI()).getParentFile();
+        final File baseFile = track(new File(classpathDir, filename));
+        writeToTestConfig(baseFile, false, KEY + "=base\n");
+
+        final Context context;
+        final File layerFile;
+        switch (layer) {
+            case LOCAL:
+                layerFile = track(createTestConfigFile("/temp/configurator/" + filename));
+                context = new Context(null, null, layerFile.getParent());
+                break;
+            case HOST:
+                layerFile = track(new File(classpathDir, "lathost." + filename));
+                context = new Context(null, "lathost", null);
+                break;
+            case ENV:
+                layerFile = track(new File(classpathDir, "lat." + filename));
+                context = new Context("lat", null, null);
+                break;
+            default:
+                layerFile = baseFile;
+                context = new Context(null, null, null);
+        }
+        writeToTestConfig(layerFile, false, KEY + "=v0\n");
+
+        final FileConfig config = new FileConfig(context, filename, refreshDelaySecs);
+        assertEquals("v0", config.getString(KEY));
+        assertEquals(layer, config.getWinningLayer(KEY));
+
+        // a change must reach every reader within one refresh delay, plus some slack
+        final long timeoutMillis = TimeUnit.SECONDS.toMillis(refreshDelaySecs + 2);
+        final ReloadLatencyHarness.Result result =
+                new ReloadLatencyHarness(config, layerFile, KEY, READERS).run(changes, timeoutMillis);
+        logger.info(layer + " layer, refresh delay " + refreshDelaySecs + "s, " + READERS + " readers: " + result);
+
+        assertEquals(changes * READERS, result.getSamples());
+        assertTrue(result.getMax() <= TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        assertEquals("v" + changes, config.getString(KEY));
+    }
+
+    private File track(File file) {
+        files.add(file);
+        return file;
+    }
+}
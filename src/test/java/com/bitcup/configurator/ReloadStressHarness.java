@@ -0,0 +1,342 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hammers a configuration with concurrent reads, first with a stable layer file,
+ * then while the file is replaced with a new generation as fast as it reloads, then
+ * while it is rewritten in place as fast as it reloads.
+ * <p/>
+ * Every key of a generation holds the generation number.  Each read must return,
+ * for every key, a generation written so far, never older than one the same reader
+ * saw before, and all keys of a read taken from one snapshot must agree.  A key of
+ * a layer that is never rewritten must keep its value.  Readers run on virtual
+ * threads when the JDK has them, platform threads otherwise.
+ * <p/>
+ * The reload phase replaces the file by an atomic move, as a deployment would.  The
+ * in-place phase truncates and rewrites the file itself, as an editor would, pausing
+ * halfway through each write, so that a reload may find it half-written.
+ * <p/>
+ * User: omar
+ */
+class ReloadStressHarness {
+
+    private static final int MAX_VIOLATIONS = 20;
+    // a changed file is reloaded once it settles
+    private static final long MAX_RELOAD_MILLIS = 10 * LayerReloadingStrategy.SETTLE_MILLIS;
+
+    /**
+     * Reads values through the API under test.
+     */
+    interface ValueReader {
+        /**
+         * @return values of the keys, in order, read from one snapshot if the API allows it
+         */
+        String[] read(String[] keys);
+    }
+
+    private final File layerFile;
+    private final String[] keys;
+    private final String stableKey;
+    private final String stableValue;
+    private final int readers;
+
+    private final AtomicInteger phase = new AtomicInteger();
+    private final LongAdder[] reads = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final Queue<String> violations = new ConcurrentLinkedQueue<String>();
+    private volatile int highestWritten;
+    private volatile int replaced;
+    private final AtomicInteger highestRead = new AtomicInteger();
+
+    /**
+     * @param layerFile   layer file rewritten with each generation
+     * @param keyCount    number of keys per generation, named stress.k0, stress.k1...
+     * @param stableKey   key of a layer never rewritten
+     * @param stableValue its value
+     * @param readers     number of reader threads
+     */
+    ReloadStressHarness(File layerFile, int keyCount, String stableKey, String stableValue, int readers) {
+        this.layerFile = layerFile;
+        this.keys = new String[keyCount + 1];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "stress.k" + i;
+        }
+        keys[keyCount] = stableKey;
+        this.stableKey = stableKey;
+        this.stableValue = stableValue;
+        this.readers = readers;
+    }
+
+    /**
+     * @return contents of the layer file for the given generation
+     */
+    String generation(int generation) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.length - 1; i++) {
+            sb.append(keys[i]).append('=').append(generation).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the stable phase, then the reload phase, then the in-place phase, each for
+     * the given time.  The layer file must hold generation 0 when called.
+     *
+     * @param reader      API under test
+     * @param consistent  true if the reader reads all keys from one snapshot
+     * @param phaseMillis duration of each phase
+     */
+    Result run(ValueReader reader, boolean consistent, long phaseMillis) throws Exception {
+        final List<Thread> threads = new ArrayList<Thread>();
+        boolean virtual = false;
+        for (int r = 0; r < readers; r++) {
+            final Reader runnable = new Reader(reader, consistent);
+            final Thread thread = newVirtualThread(runnable, "stress-reader-" + r);
+            virtual = thread != null;
+            threads.add(virtual ? thread : new Thread(runnable, "stress-reader-" + r));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try {
+            Thread.sleep(phaseMillis);
+            phase.set(1);
+            final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(phaseMillis);
+            while (System.nanoTime() - end < 0) {
+                write(highestWritten + 1);
+                awaitRead(highestWritten);
+            }
+            replaced = highestWritten;
+            phase.set(2);
+            final long inPlaceEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(phaseMillis);
+            while (System.nanoTime() - inPlaceEnd < 0) {
+                writeInPlace(highestWritten + 1);
+                awaitRead(highestWritten);
+            }
+        } finally {
+            phase.set(3);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        return new Result(virtual, readers, phaseMillis, reads[0].sum(), reads[1].sum(), reads[2].sum(), replaced,
+                highestWritten, highestRead.get(), new ArrayList<String>(violations));
+    }
+
+    private void write(int generation) throws Exception {
+        final File tmp = new File(layerFile.getPath() + ".tmp");
+        FileUtils.write(tmp, generation(generation), false);
+        // a second past the previous write, whatever the file system's timestamp resolution
+        tmp.setLastModified(layerFile.lastModified() + 1000);
+        // announced before it can be read
+        highestWritten = generation;
+        Files.move(tmp.toPath(), layerFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeInPlace(int generation) throws Exception {
+        final String contents = generation(generation);
+        final int half = contents.length() / 2;
+        // announced before it can be read
+        highestWritten = generation;
+        final long lastModified = layerFile.lastModified();
+        final Writer out = new OutputStreamWriter(new FileOutputStream(layerFile), "ISO-8859-1");
+        try {
+            out.write(contents, 0, half);
+            out.flush();
+            // each step shows as a change, whatever the file system's timestamp resolution
+            layerFile.setLastModified(lastModified + 1000);
+            Thread.sleep(1);
+            out.write(contents, half, contents.length() - half);
+            out.flush();
+            layerFile.setLastModified(lastModified + 2000);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Waits until a reader saw the given generation, or it should have.
+     */
+    private void awaitRead(int generation) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_RELOAD_MILLIS);
+        while (highestRead.get() < generation && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void violation(String violation) {
+        if (violations.size() < MAX_VIOLATIONS) {
+            violations.add(Thread.currentThread().getName() + ": " + violation);
+        }
+    }
+
+    /**
+     * @return an unstarted virtual thread, or null if the JDK has none
+     */
+    private static Thread newVirtualThread(Runnable runnable, String name) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+            return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, runnable);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private class Reader implements Runnable {
+        private final ValueReader reader;
+        private final boolean consistent;
+        private int lastSeen;
+
+        private Reader(ValueReader reader, boolean consistent) {
+            this.reader = reader;
+            this.consistent = consistent;
+        }
+
+        @Override
+        public void run() {
+            int p;
+            while ((p = phase.get()) < 3) {
+                check(reader.read(keys));
+                reads[p].increment();
+                // let the writer and the other readers run on small machines
+                Thread.yield();
+            }
+        }
+
+        private void check(String[] values) {
+            // generations are announced before they can be read
+            final int highest = highestWritten;
+            int first = -1;
+            for (int i = 0; i < values.length - 1; i++) {
+                if (values[i] == null) {
+                    violation(keys[i] + " missing");
+                    return;
+                }
+                final int generation = Integer.parseInt(values[i]);
+                if (generation > highest) {
+                    violation(keys[i] + "=" + generation + " was never written, highest is " + highest);
+                } else if (generation < lastSeen) {
+                    violation(keys[i] + "=" + generation + " after generation " + lastSeen + " was read");
+                } else if (consistent && first >= 0 && generation != first) {
+                    violation(keys[i] + "=" + generation + " read from the same snapshot as generation " + first);
+                }
+                if (first < 0) {
+                    first = generation;
+                }
+                lastSeen = Math.max(lastSeen, generation);
+            }
+            int highestSoFar;
+            while ((highestSoFar = highestRead.get()) < lastSeen && !highestRead.compareAndSet(highestSoFar, lastSeen)) {
+                // another reader raised it meanwhile, compare again
+            }
+            if (!stableValue.equals(values[values.length - 1])) {
+                violation(stableKey + "=" + values[values.length - 1] + ", expected " + stableValue);
+            }
+        }
+    }
+
+    /**
+     * Outcome of one run.
+     */
+    static class Result {
+        private final boolean virtualThreads;
+        private final int readers;
+        private final long phaseMillis;
+        private final long stableReads;
+        private final long reloadReads;
+        private final long inPlaceReads;
+        private final int replaced;
+        private final int generations;
+        private final int highestRead;
+        private final List<String> violations;
+
+        private Result(boolean virtualThreads, int readers, long phaseMillis, long stableReads, long reloadReads,
+                       long inPlaceReads, int replaced, int generations, int highestRead, List<String> violations) {
+            this.virtualThreads = virtualThreads;
+            this.readers = readers;
+            this.phaseMillis = phaseMillis;
+            this.stableReads = stableReads;
+            this.reloadReads = reloadReads;
+            this.inPlaceReads = inPlaceReads;
+            this.replaced = replaced;
+            this.generations = generations;
+            this.highestRead = highestRead;
+            this.violations = violations;
+        }
+
+        long getStableReads() {
+            return stableReads;
+        }
+
+        long getReloadReads() {
+            return reloadReads;
+        }
+
+        long getInPlaceReads() {
+            return inPlaceReads;
+        }
+
+        /**
+         * @return number of generations written by atomic move, up to the last one read back
+         */
+        int getReplacedGenerationsRead() {
+            return Math.min(highestRead, replaced);
+        }
+
+        /**
+         * @return number of generations written in place, up to the last one read back
+         */
+        int getInPlaceGenerationsRead() {
+            return Math.max(0, highestRead - replaced);
+        }
+
+        int getGenerations() {
+            return generations;
+        }
+
+        /**
+         * @return first violations found, empty if none
+         */
+        List<String> getViolations() {
+            return violations;
+        }
+
+        /**
+         * @return drop of throughput under reload compared with the stable phase, in percent
+         */
+        double getDegradation() {
+            return stableReads == 0 ? 0 : 100.0 * (stableReads - reloadReads) / stableReads;
+        }
+
+        @Override
+        public String toString() {
+            return readers + (virtualThreads ? " virtual" : " platform") + " readers"
+                    + ", stable: " + stableReads * 1000 / phaseMillis + " reads/s"
+                    + ", under reload: " + reloadReads * 1000 / phaseMillis + " reads/s"
+                    + " over " + replaced + " generations, " + getReplacedGenerationsRead() + " read"
+                    + ", in place: " + inPlaceReads * 1000 / phaseMillis + " reads/s"
+                    + " over " + (generations - replaced) + " generations, "
+                    + getInPlaceGenerationsRead() + " read"
+                    + String.format(", degradation %.1f%%", getDegradation())
+                    + ", violations: " + violations;
+        }
+    }
+}
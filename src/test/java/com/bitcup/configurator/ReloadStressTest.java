@@ -0,0 +1,106 @@
+package com.bitcup.configurator;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * Reads through each API while the local layer is replaced as fast as it reloads,
+ * then while it is rewritten in place, checking that no read sees a missing value or
+ * a value of an invalid generation, even while the file is half-written.
+ * <p/>
+ * User: omar
+ */
+public class ReloadStressTest extends BaseTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReloadStressTest.class);
+
+    private static final int KEYS = 10;
+    private static final int READERS = 8;
+    private static final long PHASE_MILLIS = 1000;
+
+    private File localConfigFile;
+    private ReloadStressHarness harness;
+    private Context context;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        localConfigFile = createTestConfigFile("/temp/configurator/project.properties");
+        // the base layer on the classpath is never rewritten
+        harness = new ReloadStressHarness(localConfigFile, KEYS, "comp1.sub.propBool", "true", READERS);
+        writeToTestConfig(localConfigFile, false, harness.generation(0));
+        context = new Context(null, null, localConfigFile.getParent());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        deleteTestConfig(localConfigFile);
+    }
+
+    @Test(enabled = true)
+    public void testFileConfig() throws Exception {
+        // refresh delay of 0 checks the file on every read
+        final FileConfig config = new FileConfig(context, "project.properties", 0);
+        check("FileConfig", harness.run(new ReloadStressHarness.ValueReader() {
+            @Override
+            public String[] read(String[] keys) {
+                final Configuration snapshot = config.getConfiguration();
+                final String[] values = new String[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    values[i] = snapshot.getString(keys[i]);
+                }
+                return values;
+            }
+        }, true, PHASE_MILLIS));
+    }
+
+    @Test(enabled = true)
+    public void testFileConfigMap() throws Exception {
+        final Map<?, ?> map = new FileConfigMap(context, "project.properties", 0).getMap();
+        check("FileConfigMap", harness.run(new ReloadStressHarness.ValueReader() {
+            @Override
+            public String[] read(String[] keys) {
+                final String[] values = new String[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    final Object value = map.get(keys[i]);
+                    values[i] = value == null ? null : value.toString();
+                }
+                return values;
+            }
+        }, false, PHASE_MILLIS));
+    }
+
+    @Test(enabled = true)
+    public void testFileConfigProperties() throws Exception {
+        final FileConfigProperties properties = new FileConfigProperties(context, "project.properties", 0);
+        check("FileConfigProperties", harness.run(new ReloadStressHarness.ValueReader() {
+            @Override
+            public String[] read(String[] keys) {
+                final String[] values = new String[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    values[i] = properties.getProperty(keys[i]);
+                }
+                return values;
+            }
+        }, false, PHASE_MILLIS));
+    }
+
+    private void check(String api, ReloadStressHarness.Result result) {
+        logger.info(api + ": " + result);
+        assertEquals(api + " violations", 0, result.getViolations().size());
+        assertTrue(result.getReplacedGenerationsRead() > 0);
+        assertTrue(result.getInPlaceGenerationsRead() > 0);
+        assertTrue(result.getStableReads() > 0);
+        assertTrue(result.getReloadReads() > 0);
+        assertTrue(result.getInPlaceReads() > 0);
+    }
+}